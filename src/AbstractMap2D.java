@@ -0,0 +1,308 @@
+/**
+ * A skeleton implementation of {@link Map2D} for maps whose pixels are not kept in a heap
+ * {int[]} (files, off-heap memory, tiles...).
+ *
+ * A subclass only provides the storage: {@link #read(int, int)}, {@link #write(int, int, int)},
+ * the dimensions and {@link #init(int, int, int)}. This class implements everything else on top
+ * of them, with the same contract (and the same results) as {@link Map}: bounds checking,
+ * cyclic wrapping, fill, shortestPath and allDistance. Subclasses may override any of them with
+ * a faster, storage specific version.
+ *
+ * The algorithms keep their scratch buffers (queues, distances) on the heap; the results of
+ * allDistance are regular {@link Map}s.
+ */
+public abstract class AbstractMap2D implements Map2D {
+    private boolean _cyclicFlag = false;
+
+    /**
+     * Reads the pixel (x,y), which is inside the map (no bounds checking).
+     */
+    protected abstract int read(int x, int y);
+
+    /**
+     * Writes the pixel (x,y), which is inside the map (no bounds checking).
+     */
+    protected abstract void write(int x, int y, int v);
+
+    /**
+     * Initializes this map by copying the provided 2D array, through {@link #init(int, int, int)}
+     * and {@link #write(int, int, int)}.
+     *
+     * @param arr source matrix to copy
+     * @throws RuntimeException for null, empty, or ragged inputs
+     */
+    @Override
+    public void init(int[][] arr) {
+        int h = checkArray(arr);
+        init(arr.length, h, 0);
+        for (int x = 0; x < arr.length; x++) {
+            for (int y = 0; y < h; y++) {
+                if (arr[x][y] != 0) write(x, y, arr[x][y]);
+            }
+        }
+    }
+
+    @Override
+    public int[][] getMap() {
+        int w = getWidth();
+        int h = getHeight();
+        int[][] ans = new int[w][h];
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                ans[x][y] = read(x, y);
+            }
+        }
+        return ans;
+    }
+
+    @Override
+    public int getPixel(int x, int y) {
+        checkInside(x, y);
+        return read(x, y);
+    }
+
+    @Override
+    public int getPixel(Pixel2D p) {
+        if (p == null) {
+            throw new RuntimeException("p is null");
+        }
+        return getPixel(p.getX(), p.getY());
+    }
+
+    @Override
+    public void setPixel(int x, int y, int v) {
+        checkInside(x, y);
+        write(x, y, v);
+    }
+
+    @Override
+    public void setPixel(Pixel2D p, int v) {
+        if (p == null) {
+            throw new RuntimeException("p is null");
+        }
+        setPixel(p.getX(), p.getY(), v);
+    }
+
+    @Override
+    public boolean isInside(Pixel2D p) {
+        if (p == null) {
+            throw new RuntimeException("p is null");
+        }
+        return p.getX() >= 0 && p.getY() >= 0 && p.getX() < getWidth() && p.getY() < getHeight();
+    }
+
+    @Override
+    public boolean isCyclic() {
+        return _cyclicFlag;
+    }
+
+    @Override
+    public void setCyclic(boolean cy) {
+        _cyclicFlag = cy;
+    }
+
+    /**
+     * Fills the connected component of {xy} with {new_v}, see {@link Map#fill(Pixel2D, int)}.
+     * Uses an explicit stack of pixels (no recursion).
+     */
+    @Override
+    public int fill(Pixel2D xy, int new_v) {
+        if (xy == null) {
+            throw new RuntimeException("pixel is null");
+        }
+        int h = getHeight();
+        int s = toIndex(xy);
+        int oldColor = read(s / h, s % h);
+        if (oldColor == new_v) {
+            return 0;
+        }
+        int[] stack = new int[64];
+        int sp = 0;
+        stack[sp++] = s;
+        int count = 0;
+        while (sp > 0) {
+            int c = stack[--sp];
+            int cx = c / h;
+            int cy = c - cx * h;
+            if (read(cx, cy) != oldColor) continue;
+            write(cx, cy, new_v);
+            count++;
+            for (int k = 0; k < 4; k++) {
+                int n = neighbor(c, k);
+                if (n < 0 || read(n / h, n % h) != oldColor) continue;
+                if (sp == stack.length) stack = java.util.Arrays.copyOf(stack, sp * 2);
+                stack[sp++] = n;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * BFS shortest path, see {@link Map#shortestPath(Pixel2D, Pixel2D, int)}.
+     */
+    @Override
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor) {
+        if (p1 == null || p2 == null) {
+            throw new RuntimeException("p1 or p2 is null");
+        }
+        int h = getHeight();
+        int s = toIndex(p1);
+        int t = toIndex(p2);
+        if (read(s / h, s % h) == obsColor || read(t / h, t % h) == obsColor) {
+            return null;
+        }
+        int[] dist = newDistances();
+        byte[] parent = new byte[dist.length];
+        int len = bfs(s, t, obsColor, dist, parent);
+        if (len < 0) {
+            return null;
+        }
+        Pixel2D[] path = new Pixel2D[len + 1];
+        int c = t;
+        for (int i = len; i >= 0; i--) {
+            path[i] = new Index2D(c / h, c % h);
+            // directions come in opposite pairs: 0<->1, 2<->3
+            if (i > 0) c = neighbor(c, parent[c] ^ 1);
+        }
+        return path;
+    }
+
+    /**
+     * BFS distances from {start}, see {@link Map#allDistance(Pixel2D, int)}.
+     */
+    @Override
+    public Map2D allDistance(Pixel2D start, int obsColor) {
+        if (start == null) throw new RuntimeException("start is null");
+        int h = getHeight();
+        int s = toIndex(start);
+        int[] dist = newDistances();
+        if (read(s / h, s % h) != obsColor) {
+            bfs(s, -1, obsColor, dist, null);
+        }
+        Map result = new Map(getWidth(), h, -1);
+        result.setCyclic(isCyclic());
+        for (int i = 0; i < dist.length; i++) {
+            if (dist[i] != -1) result.set(i, dist[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the flat index (x*h+y) of the neighbour of {c} in direction {k}
+     * (0:+x, 1:-x, 2:+y, 3:-y), wrapping around the borders when this map is cyclic.
+     *
+     * @return the neighbour's flat index, or -1 if it lies outside a non-cyclic map
+     */
+    protected int neighbor(int c, int k) {
+        int w = getWidth();
+        int h = getHeight();
+        int cx = c / h;
+        int cy = c - cx * h;
+        boolean cyclic = isCyclic();
+        switch (k) {
+            case 0: return (cx + 1 < w) ? c + h : (cyclic ? cy : -1);
+            case 1: return (cx > 0) ? c - h : (cyclic ? w * h - h + cy : -1);
+            case 2: return (cy + 1 < h) ? c + 1 : (cyclic ? c - cy : -1);
+            default: return (cy > 0) ? c - 1 : (cyclic ? c + h - 1 : -1);
+        }
+    }
+
+    /**
+     * Converts a pixel into a flat index (x*h+y), wrapping it into the map when cyclic.
+     *
+     * @throws RuntimeException if this map is not cyclic and {p} is outside of it
+     */
+    protected int toIndex(Pixel2D p) {
+        int x = p.getX();
+        int y = p.getY();
+        if (isCyclic()) {
+            x = Math.floorMod(x, getWidth());
+            y = Math.floorMod(y, getHeight());
+        } else if (!isInside(p)) {
+            throw new RuntimeException("out of bounds");
+        }
+        return x * getHeight() + y;
+    }
+
+    /**
+     * @throws RuntimeException if (x,y) is outside this map
+     */
+    protected void checkInside(int x, int y) {
+        if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight()) {
+            throw new RuntimeException("Pixel out of bounds: (" + x + "," + y + ")");
+        }
+    }
+
+    /**
+     * Validates the size given to {@link #init(int, int, int)}: the algorithms address pixels
+     * by an int flat index, so a map holds at most {Integer.MAX_VALUE} pixels.
+     *
+     * @throws RuntimeException if a dimension is not positive or the map is too large
+     */
+    protected static void checkSize(int w, int h) {
+        if (w <= 0 || h <= 0) {
+            throw new RuntimeException("Invalid map size");
+        }
+        if ((long) w * h > Integer.MAX_VALUE) {
+            throw new RuntimeException("Map too large: " + w + "x" + h);
+        }
+    }
+
+    /**
+     * Validates an {int[][]} given to {@link #init(int[][])}.
+     *
+     * @return the height of the array
+     * @throws RuntimeException for null, empty, or ragged inputs
+     */
+    protected static int checkArray(int[][] arr) {
+        if (arr == null) {
+            throw new RuntimeException("Array is null");
+        }
+        if (arr.length == 0 || arr[0] == null || arr[0].length == 0) {
+            throw new RuntimeException("Array is empty");
+        }
+        int h = arr[0].length;
+        for (int[] column : arr) {
+            if (column == null || column.length != h) {
+                throw new RuntimeException("Ragged 2D array");
+            }
+        }
+        return h;
+    }
+
+    /**
+     * @return a new distance buffer with one entry (-1) per pixel
+     */
+    private int[] newDistances() {
+        int[] dist = new int[getWidth() * getHeight()];
+        java.util.Arrays.fill(dist, -1);
+        return dist;
+    }
+
+    /**
+     * BFS from the flat index {s} (not an obstacle), writing the distances (and, if not null,
+     * the direction of the step that reached each pixel) and stopping once {t} is reached.
+     *
+     * @return the distance to {t}, or -1 if it is unreachable (or -1 was given)
+     */
+    private int bfs(int s, int t, int obsColor, int[] dist, byte[] parent) {
+        int h = getHeight();
+        int[] q = new int[dist.length];
+        int head = 0, tail = 0;
+        q[tail++] = s;
+        dist[s] = 0;
+        while (head < tail) {
+            int c = q[head++];
+            if (c == t) return dist[c];
+            int nd = dist[c] + 1;
+            for (int k = 0; k < 4; k++) {
+                int n = neighbor(c, k);
+                if (n < 0 || dist[n] != -1 || read(n / h, n % h) == obsColor) continue;
+                dist[n] = nd;
+                if (parent != null) parent[n] = (byte) k;
+                q[tail++] = n;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+
+import primitives.IntRingDeque;
+
+/**
+ * Reusable scratch space for the BFS based algorithms of {@link Map}.
+ *
+ * A workspace owns the queue, distance and parent-direction buffers used by a BFS,
+ * and grows them on demand. Visited entries are recognized by a generation stamp,
+ * so starting a new search does not clear (or allocate) anything: once the buffers
+ * are large enough, repeated queries on the same map are allocation free.
+ *
+ * A workspace is NOT thread safe - use one instance per thread.
+ * The content is valid until the next search that uses the same workspace.
+ */
+public class BfsWorkspace {
+    /** Parent direction of the source pixel (it has no parent). */
+    static final byte NO_PARENT = -1;
+
+    int[] queue = new int[0];
+    int[] dist = new int[0];
+    int[] stamp = new int[0];
+    /** Direction (0:+x, 1:-x, 2:+y, 3:-y) of the step that first reached each pixel. */
+    byte[] parent = new byte[0];
+    /** Which search reached each pixel (bidirectional search), or whether it is settled (weighted searches). */
+    byte[] side = new byte[0];
+    int gen = 0;
+    /** Meeting edge of the last bidirectional search: forward pixel and backward pixel. */
+    int meetFwd, meetBwd;
+    /** Previous jump point of each jump point (jump point search only), created on first use. */
+    private int[] _jumpFrom = new int[0];
+    /** Priority queue of the best-first searches (A*), created on first use. */
+    private IntMinHeap _heap;
+    /** Bucket queue of the weighted searches (one deque per cost modulo, or a single 0-1 deque). */
+    private IntRingDeque[] _buckets = new IntRingDeque[0];
+
+    private int _w, _h;
+
+    /**
+     * Constructs an empty workspace, buffers are allocated on first use.
+     */
+    public BfsWorkspace() {}
+
+    /**
+     * Constructs a workspace with buffers preallocated for maps of up to {capacity} pixels.
+     * @param capacity number of pixels (w*h) to preallocate for
+     */
+    public BfsWorkspace(int capacity) {
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * Makes sure all buffers can hold at least {n} pixels.
+     * @param n number of pixels
+     */
+    public void ensureCapacity(int n) {
+        if (n <= this.stamp.length) return;
+        this.queue = new int[n];
+        this.dist = new int[n];
+        this.stamp = new int[n];
+        this.parent = new byte[n];
+        this.side = new byte[n];
+        this.gen = 0;
+    }
+
+    /**
+     * @return the number of pixels this workspace can currently handle without growing.
+     */
+    public int getCapacity() {
+        return this.stamp.length;
+    }
+
+    /**
+     * Starts a new search over a w*h map: grows the buffers if needed and invalidates
+     * the previous content by moving to a new generation.
+     */
+    void begin(int w, int h) {
+        ensureCapacity(w * h);
+        this._w = w;
+        this._h = h;
+        if (this.gen == Integer.MAX_VALUE) {
+            Arrays.fill(this.stamp, 0);
+            this.gen = 0;
+        }
+        this.gen++;
+    }
+
+    /**
+     * @return an empty priority queue owned by this workspace.
+     */
+    IntMinHeap heap() {
+        if (this._heap == null) {
+            this._heap = new IntMinHeap();
+        }
+        this._heap.clear();
+        return this._heap;
+    }
+
+    /**
+     * @return {count} empty deques owned by this workspace, the buckets of a weighted search
+     */
+    IntRingDeque[] buckets(int count) {
+        if (this._buckets.length < count) {
+            IntRingDeque[] grown = Arrays.copyOf(this._buckets, count);
+            for (int i = this._buckets.length; i < count; i++) {
+                grown[i] = new IntRingDeque();
+            }
+            this._buckets = grown;
+        }
+        for (int i = 0; i < count; i++) {
+            this._buckets[i].clear();
+        }
+        return this._buckets;
+    }
+
+    /**
+     * @return the buffer holding the previous jump point of each pixel, as large as the other buffers.
+     */
+    int[] jumpFrom() {
+        if (this._jumpFrom.length < this.stamp.length) {
+            this._jumpFrom = new int[this.stamp.length];
+        }
+        return this._jumpFrom;
+    }
+
+    /**
+     * @return true iff the flat index {idx} was reached by the last search.
+     */
+    boolean visited(int idx) {
+        return this.stamp[idx] == this.gen;
+    }
+
+    /**
+     * @return the width of the map used by the last search.
+     */
+    public int getWidth() {
+        return this._w;
+    }
+
+    /**
+     * @return the height of the map used by the last search.
+     */
+    public int getHeight() {
+        return this._h;
+    }
+
+    /**
+     * Returns the distance computed by the last search to the pixel (x,y).
+     * Note: a point-to-point search stops early, so only the explored region is known.
+     *
+     * @param x column index
+     * @param y row index
+     * @return the distance from the source, or -1 if the pixel was not reached
+     * @throws RuntimeException if (x,y) is out of the bounds of the last searched map
+     */
+    public int getDistance(int x, int y) {
+        if (x < 0 || y < 0 || x >= this._w || y >= this._h) {
+            throw new RuntimeException("Pixel out of bounds: (" + x + "," + y + ")");
+        }
+        int idx = x * this._h + y;
+        return visited(idx) ? this.dist[idx] : -1;
+    }
+
+    /**
+     * Copies the distances of the last search into a new map (-1 for unreached pixels).
+     * This allocates - it is meant for debugging or for handing a result to other code.
+     *
+     * @return a new {Map} holding the distances
+     */
+    public Map toMap() {
+        Map result = new Map(this._w, this._h, -1);
+        int n = this._w * this._h;
+        for (int i = 0; i < n; i++) {
+            if (visited(i)) result.set(i, this.dist[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,310 @@
+import java.util.Arrays;
+
+/**
+ * A bit-packed passability mask of a w*h grid: one bit per pixel (1 = passable).
+ *
+ * The layout follows the flat buffer of {@link Map}: columns are stored one after the other,
+ * and every column is padded to a whole number of 64 bit words, so bit {y} of column {x} is
+ * bit {y%64} of word {x*wordsPerColumn + y/64}. Compared to an {int[][]} board the mask
+ * takes 32 times less memory.
+ *
+ * {@link #allDistance(Pixel2D)} runs a word-parallel BFS over the mask: every level advances
+ * 64 pixels of a column at once by shifting the frontier words along y (with a carry between
+ * words, and a wrap between the last and the first row when cyclic) and OR-ing the frontier
+ * of the two neighbouring columns along x.
+ */
+public class BitGrid {
+    private final int _w, _h;
+    private final int _wordsPerColumn;
+    private final long[] _bits;
+    private boolean _cyclicFlag;
+
+    /**
+     * Constructs a mask of w*h pixels, all of them blocked.
+     * @param w width
+     * @param h height
+     * @param cyclic true if the grid wraps around its borders
+     * @throws RuntimeException if w or h are not positive
+     */
+    public BitGrid(int w, int h, boolean cyclic) {
+        if (w <= 0 || h <= 0) {
+            throw new RuntimeException("Invalid dimensions: " + w + "x" + h);
+        }
+        this._w = w;
+        this._h = h;
+        this._wordsPerColumn = (h + 63) >>> 6;
+        this._bits = new long[w * _wordsPerColumn];
+        this._cyclicFlag = cyclic;
+    }
+
+    /**
+     * Builds the passability mask of a map: every pixel that is not {obsColor} is passable.
+     * The mask takes the size and cyclic flag of the map; later changes of the map are not seen.
+     *
+     * @param map the map
+     * @param obsColor value representing an obstacle
+     * @return a new mask
+     */
+    public static BitGrid passable(Map2D map, int obsColor) {
+        if (map == null) throw new RuntimeException("map is null");
+        BitGrid grid = new BitGrid(map.getWidth(), map.getHeight(), map.isCyclic());
+        int h = grid._h;
+        int wpc = grid._wordsPerColumn;
+        long[] bits = grid._bits;
+        if (map instanceof Map) {
+            Map m = (Map) map;
+            for (int x = 0, i = 0; x < grid._w; x++) {
+                for (int y = 0; y < h; y++, i++) {
+                    if (m.get(i) != obsColor) bits[x * wpc + (y >>> 6)] |= 1L << y;
+                }
+            }
+        } else {
+            for (int x = 0; x < grid._w; x++) {
+                for (int y = 0; y < h; y++) {
+                    if (map.getPixel(x, y) != obsColor) bits[x * wpc + (y >>> 6)] |= 1L << y;
+                }
+            }
+        }
+        return grid;
+    }
+
+    public int getWidth() {
+        return _w;
+    }
+
+    public int getHeight() {
+        return _h;
+    }
+
+    public boolean isCyclic() {
+        return _cyclicFlag;
+    }
+
+    public void setCyclic(boolean cy) {
+        this._cyclicFlag = cy;
+    }
+
+    /**
+     * @return true iff the pixel (x,y) is passable
+     * @throws RuntimeException if (x,y) is outside the grid
+     */
+    public boolean get(int x, int y) {
+        checkInside(x, y);
+        return (_bits[x * _wordsPerColumn + (y >>> 6)] & (1L << y)) != 0;
+    }
+
+    /**
+     * Marks the pixel (x,y) as passable or blocked.
+     * @throws RuntimeException if (x,y) is outside the grid
+     */
+    public void set(int x, int y, boolean passable) {
+        checkInside(x, y);
+        int i = x * _wordsPerColumn + (y >>> 6);
+        if (passable) {
+            _bits[i] |= 1L << y;
+        } else {
+            _bits[i] &= ~(1L << y);
+        }
+    }
+
+    /**
+     * @return the number of passable pixels
+     */
+    public int count() {
+        int count = 0;
+        for (long word : _bits) count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * @return the number of bytes held by the mask
+     */
+    public long getBytes() {
+        return 8L * _bits.length;
+    }
+
+    /**
+     * Computes the shortest-path distances from {start} to every passable pixel, with the
+     * same result as {@link Map#allDistance(Pixel2D, int)} on the map the mask was built from.
+     *
+     * The search keeps the visited set and the current frontier as bit masks and builds each
+     * level with word operations, so the per-pixel work is only writing the distances.
+     *
+     * @param start starting coordinate (wrapped into the grid when it is cyclic)
+     * @return new {Map2D} of the same size containing distances or {-1} for unreachable entries
+     * @throws RuntimeException if {start} is null or outside a non-cyclic grid
+     */
+    public Map2D allDistance(Pixel2D start) {
+        if (start == null) throw new RuntimeException("start is null");
+        int sx = start.getX();
+        int sy = start.getY();
+        if (_cyclicFlag) {
+            sx = Math.floorMod(sx, _w);
+            sy = Math.floorMod(sy, _h);
+        } else {
+            checkInside(sx, sy);
+        }
+
+        long[] seeds = new long[_bits.length];
+        seeds[sx * _wordsPerColumn + (sy >>> 6)] = 1L << sy;
+        return distances(seeds);
+    }
+
+    /**
+     * Multi-source version of {@link #allDistance(Pixel2D)}: computes the distance from every
+     * pixel to the nearest passable pixel set in {sources} (e.g. a mask of all the DOTs).
+     * Since whole frontier words advance together, wide fronts (rows or columns of sources)
+     * are where the word-parallel expansion gains the most over a cell by cell BFS.
+     *
+     * @param sources a mask of the same size, whose set pixels are the sources
+     * @return new {Map2D} of the same size containing distances or {-1} for unreachable entries
+     * @throws RuntimeException if {sources} is null or has a different size
+     */
+    public Map2D allDistance(BitGrid sources) {
+        if (sources == null) throw new RuntimeException("sources is null");
+        if (sources._w != _w || sources._h != _h) {
+            throw new RuntimeException("sources mask size does not match");
+        }
+        return distances(sources._bits.clone());
+    }
+
+    /**
+     * Runs the word-parallel BFS from the {seeds} words and copies the distances into a new map.
+     */
+    private Map2D distances(long[] seeds) {
+        Map result = new Map(_w, _h, -1);
+        result.setCyclic(_cyclicFlag);
+        int[] dist = new int[_w * _h];
+        Arrays.fill(dist, -1);
+        expand(seeds, dist);
+        for (int i = 0; i < dist.length; i++) {
+            if (dist[i] != -1) result.set(i, dist[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Word-parallel BFS kernel: writes the distance from the nearest passable seed pixel into
+     * {dist} (flat x*h+y indices, initially -1) for every reachable pixel.
+     *
+     * Only the words next to the frontier are visited: a frontier word can reach the same word,
+     * the words above and below it in its column (through the shift carries) and the words at
+     * the same height in the two neighbouring columns. Those candidates are collected into a
+     * list (marked with the level number, so each is listed once) and the words that get new
+     * pixels form the frontier of the next level.
+     */
+    private void expand(long[] seeds, int[] dist) {
+        int w = _w;
+        int h = _h;
+        int wpc = _wordsPerColumn;
+        long[] bits = _bits;
+        boolean cyclic = _cyclicFlag;
+        int words = bits.length;
+
+        // bit position of the last row inside the last word of a column
+        int topBit = (h - 1) & 63;
+        long[] visited = new long[words];
+        long[] cur = seeds;
+        long[] next = new long[words];
+        int[] active = new int[words];
+        int[] cand = new int[words];
+        int[] mark = new int[words];
+
+        int activeCount = 0;
+        for (int i = 0; i < words; i++) {
+            long n = seeds[i] & bits[i];
+            seeds[i] = n;
+            if (n == 0) continue;
+            visited[i] = n;
+            active[activeCount++] = i;
+            int y0 = (i / wpc) * h + ((i % wpc) << 6);
+            do {
+                dist[y0 + Long.numberOfTrailingZeros(n)] = 0;
+                n &= n - 1;
+            } while (n != 0);
+        }
+
+        for (int level = 1; activeCount > 0; level++) {
+            int candCount = 0;
+            for (int a = 0; a < activeCount; a++) {
+                int i = active[a];
+                int x = i / wpc;
+                int base = x * wpc;
+                int j = i - base;
+                long f = cur[i];
+                for (int k = 0; k < 5; k++) {
+                    int c;
+                    switch (k) {
+                        case 0: c = i; break;
+                        // the words above / below only get a carry from the boundary bits
+                        case 1: c = (j + 1 < wpc) ? ((f < 0) ? i + 1 : -1)
+                                : ((cyclic && ((f >>> topBit) & 1L) != 0) ? base : -1); break;
+                        case 2: c = ((f & 1L) == 0) ? -1 : (j > 0) ? i - 1 : (cyclic ? base + wpc - 1 : -1); break;
+                        case 3: c = (x + 1 < w) ? i + wpc : (cyclic ? j : -1); break;
+                        default: c = (x > 0) ? i - wpc : (cyclic ? words - wpc + j : -1); break;
+                    }
+                    if (c < 0 || mark[c] == level) continue;
+                    mark[c] = level;
+                    cand[candCount++] = c;
+                }
+            }
+
+            int nextCount = 0;
+            for (int a = 0; a < candCount; a++) {
+                int i = cand[a];
+                int x = i / wpc;
+                int base = x * wpc;
+                int j = i - base;
+                long f = cur[i];
+                // y+1: shift up, carrying the top bit of the word below (row h-1 wraps to row 0)
+                long up = f << 1;
+                if (j > 0) {
+                    up |= cur[i - 1] >>> 63;
+                } else if (cyclic) {
+                    up |= (cur[base + wpc - 1] >>> topBit) & 1L;
+                }
+                // y-1: shift down, carrying the bottom bit of the word above (row 0 wraps to row h-1)
+                long down = f >>> 1;
+                if (j + 1 < wpc) {
+                    down |= cur[i + 1] << 63;
+                } else if (cyclic) {
+                    down |= (cur[base] & 1L) << topBit;
+                }
+                long side = 0;
+                if (x + 1 < w) side |= cur[i + wpc];
+                else if (cyclic) side |= cur[j];
+                if (x > 0) side |= cur[i - wpc];
+                else if (cyclic) side |= cur[words - wpc + j];
+
+                long n = (up | down | side) & bits[i] & ~visited[i];
+                if (n == 0) continue;
+                visited[i] |= n;
+                next[i] = n;
+                cand[nextCount++] = i;
+                int y0 = x * h + (j << 6);
+                do {
+                    dist[y0 + Long.numberOfTrailingZeros(n)] = level;
+                    n &= n - 1;
+                } while (n != 0);
+            }
+
+            // the current frontier becomes the (all zero) buffer of the level after next
+            for (int a = 0; a < activeCount; a++) {
+                cur[active[a]] = 0;
+            }
+            long[] t = cur;
+            cur = next;
+            next = t;
+            int[] l = active;
+            active = cand;
+            cand = l;
+            activeCount = nextCount;
+        }
+    }
+
+    private void checkInside(int x, int y) {
+        if (x < 0 || y < 0 || x >= _w || y >= _h) {
+            throw new RuntimeException("Pixel out of bounds: (" + x + "," + y + ")");
+        }
+    }
+}
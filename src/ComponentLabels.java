@@ -0,0 +1,297 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Connected components of the free (non obstacle) pixels of a {@link Map}, computed without
+ * modifying the map (unlike repeated {@link Map#fill} calls).
+ *
+ * Every free pixel gets a component label in [0, count), obstacles get -1. Labels are numbered
+ * in the order of the first pixel of each component in the flat (x*h+y) order, so the result
+ * does not depend on how it was computed. Two free pixels are connected (a path exists between
+ * them) iff they have the same label.
+ *
+ * The labeling is a union-find over the pixels, run in vertical strips of columns:
+ * 1. every strip unions its pixels with their up / left neighbours inside the strip (in
+ *    parallel, the strips touch disjoint parts of the parent array)
+ * 2. the strip borders, and the left/right border of a cyclic map, are merged sequentially
+ * 3. every pixel is pointed at its root (in parallel) and the roots are numbered
+ * Unions always keep the smaller index as the root, so a root is the first pixel of its
+ * component. See {@link Map#components(int)} for the cached labels used by shortestPath.
+ */
+public class ComponentLabels {
+    /** Maps with fewer pixels are labeled in a single strip. */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final int _w, _h;
+    private final int _obsColor;
+    private final boolean _cyclic;
+    /** Union-find parents during the labeling, the labels afterwards. */
+    private final int[] _labels;
+    private int[] _sizes = new int[16];
+    private int _count = 0;
+
+    private ComponentLabels(Map map, int obsColor) {
+        this._w = map.getWidth();
+        this._h = map.getHeight();
+        this._obsColor = obsColor;
+        this._cyclic = map.isCyclic();
+        this._labels = new int[_w * _h];
+    }
+
+    /**
+     * Labels the components of a map, using the common fork/join pool for large maps.
+     *
+     * @param map the map
+     * @param obsColor value representing an obstacle
+     * @return the component labels
+     */
+    public static ComponentLabels label(Map map, int obsColor) {
+        return label(map, obsColor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Labels the components of a map, splitting the work in strips over {pool}.
+     *
+     * @param map the map
+     * @param obsColor value representing an obstacle
+     * @param pool the fork/join pool to use
+     * @return the component labels
+     */
+    public static ComponentLabels label(Map map, int obsColor, ForkJoinPool pool) {
+        if (map == null) throw new RuntimeException("map is null");
+        if (pool == null) throw new RuntimeException("pool is null");
+        ComponentLabels ans = new ComponentLabels(map, obsColor);
+        int w = ans._w;
+        int strips = 1;
+        if ((long) w * ans._h >= PARALLEL_THRESHOLD) {
+            strips = Math.min(w, 4 * pool.getParallelism());
+        }
+        int[] starts = new int[strips + 1];
+        for (int s = 0; s <= strips; s++) {
+            starts[s] = (int) ((long) w * s / strips);
+        }
+
+        if (strips == 1) {
+            ans.unionStrip(map, 0, w);
+        } else {
+            pool.invoke(ans.new StripTask(map, starts, 0, strips, false));
+        }
+        for (int s = 1; s < strips; s++) {
+            ans.unionColumns(starts[s] - 1, starts[s]);
+        }
+        if (ans._cyclic && w > 1) {
+            ans.unionColumns(w - 1, 0);
+        }
+        if (strips == 1) {
+            ans.flatten(0, w);
+        } else {
+            pool.invoke(ans.new StripTask(map, starts, 0, strips, true));
+        }
+        ans.number();
+        return ans;
+    }
+
+    public int getWidth() {
+        return _w;
+    }
+
+    public int getHeight() {
+        return _h;
+    }
+
+    /** @return the obstacle color the labels were computed for. */
+    public int getObsColor() {
+        return _obsColor;
+    }
+
+    /** @return the number of components. */
+    public int getComponentCount() {
+        return _count;
+    }
+
+    /**
+     * @return the label of the pixel (x,y), or -1 if it is an obstacle
+     * @throws RuntimeException if (x,y) is outside the map
+     */
+    public int getLabel(int x, int y) {
+        if (x < 0 || y < 0 || x >= _w || y >= _h) {
+            throw new RuntimeException("Pixel out of bounds: (" + x + "," + y + ")");
+        }
+        return _labels[x * _h + y];
+    }
+
+    /**
+     * @return the label of a flat index (x*h+y), without bounds checking
+     */
+    int label(int idx) {
+        return _labels[idx];
+    }
+
+    /**
+     * @param label a component label
+     * @return the number of pixels of the component
+     */
+    public int getSize(int label) {
+        if (label < 0 || label >= _count) {
+            throw new RuntimeException("Invalid label: " + label);
+        }
+        return _sizes[label];
+    }
+
+    /**
+     * @return the size of every component, indexed by label
+     */
+    public int[] getSizes() {
+        return Arrays.copyOf(_sizes, _count);
+    }
+
+    /**
+     * @return true iff (x1,y1) and (x2,y2) are free pixels of the same component
+     */
+    public boolean connected(int x1, int y1, int x2, int y2) {
+        int a = getLabel(x1, y1);
+        return a >= 0 && a == getLabel(x2, y2);
+    }
+
+    /**
+     * @return a new map holding the label of every pixel (-1 for obstacles)
+     */
+    public Map toMap() {
+        Map result = new Map(_w, _h, -1);
+        result.setCyclic(_cyclic);
+        for (int i = 0; i < _labels.length; i++) {
+            if (_labels[i] != -1) result.set(i, _labels[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Phase 1 for the columns [x0, x1): every free pixel starts as its own set and is united
+     * with its free neighbours below (y-1, wrapping in a cyclic map) and to the left (x-1,
+     * inside the strip only).
+     */
+    private void unionStrip(Map map, int x0, int x1) {
+        int h = _h;
+        int[] parent = _labels;
+        int obs = _obsColor;
+        for (int x = x0; x < x1; x++) {
+            int base = x * h;
+            for (int y = 0; y < h; y++) {
+                int i = base + y;
+                if (map.get(i) == obs) {
+                    parent[i] = -1;
+                    continue;
+                }
+                parent[i] = i;
+                if (y > 0 && parent[i - 1] >= 0) union(i - 1, i);
+                if (x > x0 && parent[i - h] >= 0) union(i - h, i);
+            }
+            if (_cyclic && h > 1 && parent[base] >= 0 && parent[base + h - 1] >= 0) {
+                union(base, base + h - 1);
+            }
+        }
+    }
+
+    /**
+     * Phase 2: unites the free pixels of column {xa} with their neighbours in column {xb}.
+     */
+    private void unionColumns(int xa, int xb) {
+        int[] parent = _labels;
+        int a = xa * _h;
+        int b = xb * _h;
+        for (int y = 0; y < _h; y++) {
+            if (parent[a + y] >= 0 && parent[b + y] >= 0) union(a + y, b + y);
+        }
+    }
+
+    /**
+     * Phase 3a for the columns [x0, x1): points every free pixel directly at its root.
+     * Other strips may shorten the same chains concurrently, but they only ever replace a
+     * parent by another member of the same set, so every find still ends at the same root.
+     */
+    private void flatten(int x0, int x1) {
+        int[] parent = _labels;
+        for (int i = x0 * _h, end = x1 * _h; i < end; i++) {
+            if (parent[i] >= 0) parent[i] = find(i);
+        }
+    }
+
+    /**
+     * Phase 3b: replaces the (flattened) parents by labels. A root is the smallest index of its
+     * set, so it is met, and numbered, before the other pixels of its component.
+     */
+    private void number() {
+        int[] parent = _labels;
+        for (int i = 0; i < parent.length; i++) {
+            int r = parent[i];
+            if (r < 0) continue;
+            int label;
+            if (r == i) {
+                if (_count == _sizes.length) _sizes = Arrays.copyOf(_sizes, 2 * _count);
+                label = _count++;
+            } else {
+                label = parent[r]; // the root was already numbered
+            }
+            parent[i] = label;
+            _sizes[label]++;
+        }
+    }
+
+    /**
+     * Finds the root of {x}, halving the path on the way.
+     */
+    private int find(int x) {
+        int[] parent = _labels;
+        while (parent[x] != x) {
+            int p = parent[x];
+            int gp = parent[p];
+            parent[x] = gp;
+            x = p;
+        }
+        return x;
+    }
+
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) return;
+        if (ra < rb) {
+            _labels[rb] = ra;
+        } else {
+            _labels[ra] = rb;
+        }
+    }
+
+    /**
+     * Runs phase 1 (or phase 3a when {flatten}) on the strips [lo, hi).
+     */
+    private class StripTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Map map;
+        private final int[] starts;
+        private final int lo, hi;
+        private final boolean flatten;
+
+        StripTask(Map map, int[] starts, int lo, int hi, boolean flatten) {
+            this.map = map;
+            this.starts = starts;
+            this.lo = lo;
+            this.hi = hi;
+            this.flatten = flatten;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new StripTask(map, starts, lo, mid, flatten), new StripTask(map, starts, mid, hi, flatten));
+            } else if (flatten) {
+                flatten(starts[lo], starts[hi]);
+            } else {
+                unionStrip(map, starts[lo], starts[hi]);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The regions of a {@link Map} modified since the last {@link #clear()}, obtained from
+ * {@link Map#trackDirty()}, so that renderers and caches redo only the work of what changed.
+ *
+ * The map is cut into TILE x TILE tiles (like {@link TiledMap}) and a tile is dirty once any of
+ * its pixels was written with a new value ({@code setPixel}), painted by {@code fill}, or the map
+ * was re-initialized ({@code init} makes every tile dirty, and adapts the bitmap to a new size).
+ * The dirty tiles are available one by one ({@link #isTileDirty(int, int)}) or as rectangles of
+ * pixels ({@link #iterator()}), each covering a vertical run of dirty tiles.
+ *
+ * Every consumer gets its own tracker and clears it independently. Call {@link #close()} to stop
+ * tracking. This class is not thread safe.
+ */
+public class DirtyRegions implements Iterable<Rectangle> {
+    /** Tiles are TILE x TILE pixels. */
+    public static final int TILE_SHIFT = 6;
+    public static final int TILE = 1 << TILE_SHIFT;
+
+    private Map _map;
+    private int _w, _h;
+    private int _tilesX, _tilesY;
+    /** One bit per tile, tile (tx,ty) is bit tx*_tilesY+ty. */
+    private long[] _bits;
+    private int _count;
+
+    DirtyRegions(Map map) {
+        this._map = map;
+        resize(map.getWidth(), map.getHeight());
+    }
+
+    /** @return true iff at least one tile is dirty. */
+    public boolean isDirty() {
+        return _count > 0;
+    }
+
+    /** @return the number of dirty tiles. */
+    public int getDirtyTileCount() {
+        return _count;
+    }
+
+    public int getTilesX() {
+        return _tilesX;
+    }
+
+    public int getTilesY() {
+        return _tilesY;
+    }
+
+    /**
+     * @return true iff the tile (tx,ty), holding the pixels [tx*TILE, (tx+1)*TILE) x
+     * [ty*TILE, (ty+1)*TILE), is dirty
+     * @throws RuntimeException if the tile is outside the map
+     */
+    public boolean isTileDirty(int tx, int ty) {
+        if (tx < 0 || ty < 0 || tx >= _tilesX || ty >= _tilesY) {
+            throw new RuntimeException("Tile out of bounds: (" + tx + "," + ty + ")");
+        }
+        return bit(tx * _tilesY + ty);
+    }
+
+    /**
+     * @return true iff the tile of the pixel (x,y) is dirty
+     * @throws RuntimeException if (x,y) is outside the map
+     */
+    public boolean isDirty(int x, int y) {
+        if (x < 0 || y < 0 || x >= _w || y >= _h) {
+            throw new RuntimeException("Pixel out of bounds: (" + x + "," + y + ")");
+        }
+        return bit((x >>> TILE_SHIFT) * _tilesY + (y >>> TILE_SHIFT));
+    }
+
+    /**
+     * @return a copy of the tile bitmap: bit (tx*getTilesY()+ty) is set for a dirty tile (tx,ty)
+     */
+    public long[] getBitmap() {
+        return _bits.clone();
+    }
+
+    /**
+     * Marks every tile clean (the consumer has processed the changes).
+     */
+    public void clear() {
+        Arrays.fill(_bits, 0);
+        _count = 0;
+    }
+
+    /**
+     * Stops tracking the map; the current dirty tiles stay readable.
+     */
+    public void close() {
+        if (_map != null) {
+            _map.stopTracking(this);
+            _map = null;
+        }
+    }
+
+    /**
+     * Iterates over the dirty pixels as rectangles (x, y, width, height), clipped to the map.
+     * Each rectangle is one column of tiles wide and covers a maximal run of dirty tiles of that
+     * column. The tracker must not change during the iteration.
+     */
+    @Override
+    public Iterator<Rectangle> iterator() {
+        return new Iterator<Rectangle>() {
+            private int _next = nextDirty(0);
+
+            @Override
+            public boolean hasNext() {
+                return _next >= 0;
+            }
+
+            @Override
+            public Rectangle next() {
+                if (_next < 0) throw new NoSuchElementException();
+                int tx = _next / _tilesY;
+                int ty = _next - tx * _tilesY;
+                int end = _next + 1;
+                while (end < (tx + 1) * _tilesY && bit(end)) end++;
+                int x = tx << TILE_SHIFT;
+                int y = ty << TILE_SHIFT;
+                int width = Math.min(TILE, _w - x);
+                int height = Math.min((end - _next) << TILE_SHIFT, _h - y);
+                _next = nextDirty(end);
+                return new Rectangle(x, y, width, height);
+            }
+        };
+    }
+
+    /**
+     * Marks the tile of the pixel (x,y), which is inside the map.
+     */
+    void markPixel(int x, int y) {
+        set((x >>> TILE_SHIFT) * _tilesY + (y >>> TILE_SHIFT));
+    }
+
+    /**
+     * Marks the tiles of the pixels (x, y0) .. (x, y1) of one column, y0 <= y1.
+     */
+    void markColumn(int x, int y0, int y1) {
+        int base = (x >>> TILE_SHIFT) * _tilesY;
+        for (int ty = y0 >>> TILE_SHIFT, end = y1 >>> TILE_SHIFT; ty <= end; ty++) {
+            set(base + ty);
+        }
+    }
+
+    /**
+     * Marks every tile, after the map was re-initialized to w*h pixels.
+     */
+    void markAll(int w, int h) {
+        if (w != _w || h != _h) resize(w, h);
+        int n = _tilesX * _tilesY;
+        Arrays.fill(_bits, -1L);
+        if ((n & 63) != 0) _bits[_bits.length - 1] = (1L << n) - 1;
+        _count = n;
+    }
+
+    private void resize(int w, int h) {
+        _w = w;
+        _h = h;
+        _tilesX = (w + TILE - 1) >>> TILE_SHIFT;
+        _tilesY = (h + TILE - 1) >>> TILE_SHIFT;
+        _bits = new long[(_tilesX * _tilesY + 63) >>> 6];
+        _count = 0;
+    }
+
+    private boolean bit(int t) {
+        return (_bits[t >>> 6] & (1L << t)) != 0;
+    }
+
+    private void set(int t) {
+        long mask = 1L << t;
+        long word = _bits[t >>> 6];
+        if ((word & mask) == 0) {
+            _bits[t >>> 6] = word | mask;
+            _count++;
+        }
+    }
+
+    /**
+     * @return the first dirty tile index >= {from}, or -1
+     */
+    private int nextDirty(int from) {
+        int n = _tilesX * _tilesY;
+        if (from >= n) return -1;
+        int i = from >>> 6;
+        long word = _bits[i] & (-1L << from);
+        while (word == 0) {
+            if (++i == _bits.length) return -1;
+            word = _bits[i];
+        }
+        int t = (i << 6) + Long.numberOfTrailingZeros(word);
+        return (t < n) ? t : -1;
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded LRU cache of {@link Map#allDistance(Pixel2D, int)} results for one map.
+ *
+ * Entries are keyed by (start, obsColor, map version): as long as the map is not modified
+ * (see {@link Map#getVersion()}), the same query returns the cached distance map. Once the map
+ * changes, all the older entries become stale and are dropped on the next lookup.
+ * The cache is bounded both by the number of entries and by their (approximate) size in bytes,
+ * and evicts the least recently used entries first.
+ *
+ * The cached distances are shared between callers, so they are handed out as immutable
+ * {@link MapSnapshot}s of distance maps that the cache keeps to itself: nobody can write them.
+ * This class is not thread safe.
+ */
+public class DistanceCache {
+    /** Approximate bytes held by a cached distance map, per pixel. */
+    private static final long BYTES_PER_PIXEL = 4;
+
+    private final Map _map;
+    private final int _maxEntries;
+    private final long _maxBytes;
+    private final LinkedHashMap<Key, MapView> _entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long _version;
+    private long _bytes = 0;
+    private long _hits = 0, _misses = 0, _evictions = 0;
+
+    /**
+     * Constructs a cache bounded by the number of entries only.
+     * @param map the map whose distances are cached
+     * @param maxEntries maximal number of cached distance maps
+     */
+    public DistanceCache(Map map, int maxEntries) {
+        this(map, maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a cache bounded by the number of entries and by their total size.
+     * @param map the map whose distances are cached
+     * @param maxEntries maximal number of cached distance maps
+     * @param maxBytes maximal (approximate) number of bytes held by the cached distance maps
+     * @throws RuntimeException if {map} is null or a bound is not positive
+     */
+    public DistanceCache(Map map, int maxEntries, long maxBytes) {
+        if (map == null) {
+            throw new RuntimeException("map is null");
+        }
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new RuntimeException("Invalid cache bounds");
+        }
+        this._map = map;
+        this._maxEntries = maxEntries;
+        this._maxBytes = maxBytes;
+        this._version = map.getVersion();
+    }
+
+    /**
+     * Returns the distances from {start}, computing them only if they are not cached for the
+     * current version of the map. See {@link Map#allDistance(Pixel2D, int)}.
+     *
+     * @param start starting coordinate
+     * @param obsColor value representing an obstacle
+     * @return a (shared, immutable) view of the distances from {start}
+     */
+    public MapView allDistance(Pixel2D start, int obsColor) {
+        if (start == null) throw new RuntimeException("start is null");
+        dropStale();
+
+        int x = start.getX();
+        int y = start.getY();
+        if (_map.isCyclic()) {
+            x = Math.floorMod(x, _map.getWidth());
+            y = Math.floorMod(y, _map.getHeight());
+        }
+        Key key = new Key(x, y, obsColor, _version);
+        MapView cached = _entries.get(key);
+        if (cached != null) {
+            _hits++;
+            return cached;
+        }
+
+        _misses++;
+        // the distance map is not reachable from outside the snapshot, so it is never written
+        MapView result = ((Map) _map.allDistance(start, obsColor)).snapshot();
+        long size = BYTES_PER_PIXEL * result.getWidth() * result.getHeight();
+        if (size <= _maxBytes) {
+            _entries.put(key, result);
+            _bytes += size;
+            evict();
+        }
+        return result;
+    }
+
+    /**
+     * Removes all the cached entries (they are not counted as evictions).
+     */
+    public void clear() {
+        _entries.clear();
+        _bytes = 0;
+    }
+
+    /** @return the number of lookups answered from the cache. */
+    public long getHits() {
+        return _hits;
+    }
+
+    /** @return the number of lookups that had to compute the distances. */
+    public long getMisses() {
+        return _misses;
+    }
+
+    /** @return the number of entries removed because of the bounds or a map change. */
+    public long getEvictions() {
+        return _evictions;
+    }
+
+    /** @return the number of cached distance maps. */
+    public int size() {
+        return _entries.size();
+    }
+
+    /** @return the approximate number of bytes held by the cached distance maps. */
+    public long getBytes() {
+        return _bytes;
+    }
+
+    /**
+     * Drops every entry if the map was modified since they were computed.
+     */
+    private void dropStale() {
+        long version = _map.getVersion();
+        if (version != _version) {
+            _evictions += _entries.size();
+            clear();
+            _version = version;
+        }
+    }
+
+    /**
+     * Removes least recently used entries until both bounds are respected.
+     */
+    private void evict() {
+        Iterator<java.util.Map.Entry<Key, MapView>> it = _entries.entrySet().iterator();
+        while ((_entries.size() > _maxEntries || _bytes > _maxBytes) && it.hasNext()) {
+            MapView eldest = it.next().getValue();
+            it.remove();
+            _bytes -= BYTES_PER_PIXEL * eldest.getWidth() * eldest.getHeight();
+            _evictions++;
+        }
+    }
+
+    /**
+     * Cache key: the (wrapped) start pixel, the obstacle color and the map version.
+     */
+    private static final class Key {
+        private final int _x, _y, _obsColor;
+        private final long _version;
+
+        Key(int x, int y, int obsColor, long version) {
+            this._x = x;
+            this._y = y;
+            this._obsColor = obsColor;
+            this._version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return _x == k._x && _y == k._y && _obsColor == k._obsColor && _version == k._version;
+        }
+
+        @Override
+        public int hashCode() {
+            int r = _x;
+            r = 31 * r + _y;
+            r = 31 * r + _obsColor;
+            return 31 * r + Long.hashCode(_version);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+import java.util.Arrays;
+
+/**
+ * A distance field (the result of {@link Map#allDistance(Pixel2D, int)}) that stays up to date
+ * while its map is edited.
+ *
+ * The field registers itself as a {@link Map.ChangeListener}. When a single pixel becomes or
+ * stops being an obstacle it is repaired incrementally, touching only the pixels whose distance
+ * actually changes (and their neighbours):
+ * - an opened pixel can only shorten distances: it takes 1 + its best neighbour, and a BFS
+ *   from it lowers every pixel it now reaches faster
+ * - a closed pixel can only lengthen distances: the pixels that lose every neighbour one step
+ *   closer to the source are collected level by level, and only they are recomputed, with a
+ *   Dijkstra seeded from their unaffected neighbours (a dynamic SSSP repair, as in LPA*)
+ * Changes that do not switch a pixel between obstacle and free space cost nothing; bulk changes
+ * ({@code init}, {@code fill}, the cyclic flag) rebuild the field.
+ *
+ * Call {@link #close()} to stop following the map. This class is not thread safe.
+ */
+public class DynamicDistanceField implements Map.ChangeListener {
+    private final Map _map;
+    private final int _obsColor;
+    private final int _sx, _sy;
+
+    private int _w, _h;
+    private int[] _dist;
+    /** Scratch queue and generation marks of the repairs. */
+    private int[] _queue;
+    private int[] _stamp;
+    private int _gen = 0;
+    private final IntMinHeap _heap = new IntMinHeap();
+
+    private long _rebuilds = 0;
+    private int _lastRepairSize = 0;
+    private boolean _closed = false;
+
+    /**
+     * Computes the distances from {source} and starts following the changes of {map}.
+     *
+     * @param map the map
+     * @param source the source pixel (wrapped into the map when it is cyclic)
+     * @param obsColor value representing an obstacle
+     * @throws RuntimeException if {map} or {source} is null, or {source} is outside a non-cyclic map
+     */
+    public DynamicDistanceField(Map map, Pixel2D source, int obsColor) {
+        if (map == null) throw new RuntimeException("map is null");
+        if (source == null) throw new RuntimeException("source is null");
+        int x = source.getX();
+        int y = source.getY();
+        if (map.isCyclic()) {
+            x = Math.floorMod(x, map.getWidth());
+            y = Math.floorMod(y, map.getHeight());
+        } else if (!map.isInside(source)) {
+            throw new RuntimeException("source out of bounds");
+        }
+        this._map = map;
+        this._obsColor = obsColor;
+        this._sx = x;
+        this._sy = y;
+        rebuild();
+        map.addChangeListener(this);
+    }
+
+    /**
+     * @return the distance from the source to (x,y), or -1 if it is unreachable
+     * @throws RuntimeException if (x,y) is outside the map
+     */
+    public int getDistance(int x, int y) {
+        if (x < 0 || y < 0 || x >= _w || y >= _h) {
+            throw new RuntimeException("Pixel out of bounds: (" + x + "," + y + ")");
+        }
+        return _dist[x * _h + y];
+    }
+
+    /**
+     * Copies the current distances into a new map, as {@link Map#allDistance(Pixel2D, int)} returns them.
+     * @return a new {Map} holding the distances
+     */
+    public Map toMap() {
+        Map result = new Map(_w, _h, -1);
+        result.setCyclic(_map.isCyclic());
+        for (int i = 0; i < _dist.length; i++) {
+            if (_dist[i] != -1) result.set(i, _dist[i]);
+        }
+        return result;
+    }
+
+    /** @return the number of full rebuilds, including the initial one. */
+    public long getRebuilds() {
+        return _rebuilds;
+    }
+
+    /** @return the number of pixels whose distance the last incremental repair changed. */
+    public int getLastRepairSize() {
+        return _lastRepairSize;
+    }
+
+    /**
+     * Stops following the map; the distances keep their last value.
+     */
+    public void close() {
+        if (!_closed) {
+            _map.removeChangeListener(this);
+            _closed = true;
+        }
+    }
+
+    @Override
+    public void pixelChanged(int x, int y, int oldValue, int newValue) {
+        boolean wasFree = oldValue != _obsColor;
+        boolean isFree = newValue != _obsColor;
+        _lastRepairSize = 0;
+        if (wasFree == isFree) return;
+        if (x == _sx && y == _sy) {
+            rebuild();
+        } else if (isFree) {
+            opened(_map.index(x, y));
+        } else {
+            closed(_map.index(x, y));
+        }
+    }
+
+    @Override
+    public void mapChanged() {
+        rebuild();
+    }
+
+    /**
+     * Recomputes the whole field with a plain BFS.
+     */
+    private void rebuild() {
+        _w = _map.getWidth();
+        _h = _map.getHeight();
+        int n = _w * _h;
+        if (_dist == null || _dist.length != n) {
+            _dist = new int[n];
+            _queue = new int[n];
+            _stamp = new int[n];
+            _gen = 0;
+        }
+        Arrays.fill(_dist, -1);
+        _rebuilds++;
+        if (_sx >= _w || _sy >= _h) return; // the map shrank below the source
+        int s = _map.index(_sx, _sy);
+        if (_map.get(s) == _obsColor) return;
+        _dist[s] = 0;
+        _queue[0] = s;
+        lower(1);
+    }
+
+    /**
+     * The pixel {c} stopped being an obstacle: give it a distance from its neighbours and
+     * propagate the shorter distances it creates.
+     */
+    private void opened(int c) {
+        int best = -1;
+        for (int k = 0; k < 4; k++) {
+            int n = _map.neighbor(c, k);
+            if (n >= 0 && _dist[n] >= 0 && (best < 0 || _dist[n] < best)) best = _dist[n];
+        }
+        if (best < 0) return;
+        _dist[c] = best + 1;
+        _queue[0] = c;
+        lower(1);
+    }
+
+    /**
+     * BFS from the {tail} pixels of the queue (whose distances are already set), lowering the
+     * distance of every neighbour that can now be reached faster (or at all).
+     */
+    private void lower(int tail) {
+        int[] dist = _dist;
+        int[] q = _queue;
+        int head = 0;
+        int changed = tail;
+        while (head < tail) {
+            int c = q[head++];
+            int nd = dist[c] + 1;
+            for (int k = 0; k < 4; k++) {
+                int n = _map.neighbor(c, k);
+                if (n < 0 || (dist[n] != -1 && dist[n] <= nd) || _map.get(n) == _obsColor) continue;
+                dist[n] = nd;
+                q[tail++] = n;
+                changed++;
+            }
+        }
+        _lastRepairSize = changed;
+    }
+
+    /**
+     * The pixel {c} became an obstacle: find the pixels that depended on it and recompute them.
+     */
+    private void closed(int c) {
+        int[] dist = _dist;
+        int dc = dist[c];
+        dist[c] = -1;
+        if (dc < 0) return;
+
+        int gen = nextGen();
+        int[] q = _queue;
+        int[] stamp = _stamp;
+        // 1. collect the affected pixels in increasing (old) distance order: a pixel is affected
+        //    if none of its neighbours is a non-affected pixel one step closer to the source
+        int tail = pushDependents(c, dc, gen, 0);
+        int head = 0;
+        while (head < tail) {
+            int v = q[head++];
+            int dv = dist[v];
+            if (supported(v, dv, gen)) {
+                stamp[v] = gen - 1; // not affected after all
+                continue;
+            }
+            tail = pushDependents(v, dv, gen, tail);
+        }
+
+        // 2. the affected pixels lose their distance, then get the best one through an
+        //    unaffected neighbour, and the improvements spread among them (Dijkstra)
+        IntMinHeap heap = _heap;
+        heap.clear();
+        int affected = 0;
+        for (int i = 0; i < tail; i++) {
+            int v = q[i];
+            if (stamp[v] != gen) continue;
+            affected++;
+            dist[v] = -1;
+        }
+        for (int i = 0; i < tail; i++) {
+            int v = q[i];
+            if (stamp[v] != gen) continue;
+            int best = -1;
+            for (int k = 0; k < 4; k++) {
+                int n = _map.neighbor(v, k);
+                if (n >= 0 && stamp[n] != gen && dist[n] >= 0 && (best < 0 || dist[n] < best)) best = dist[n];
+            }
+            if (best >= 0) heap.add(best + 1, v);
+        }
+        while (!heap.isEmpty()) {
+            int v = heap.removeMin();
+            int dv = (int) heap.lastKey();
+            if (dist[v] != -1) continue; // already settled with a shorter distance
+            dist[v] = dv;
+            for (int k = 0; k < 4; k++) {
+                int n = _map.neighbor(v, k);
+                if (n >= 0 && stamp[n] == gen && dist[n] == -1) heap.add(dv + 1, n);
+            }
+        }
+        _lastRepairSize = affected;
+    }
+
+    /**
+     * Queues the neighbours of {v} that were one step further than {v} (distance {dv}) and
+     * are not queued yet.
+     *
+     * @return the new queue length
+     */
+    private int pushDependents(int v, int dv, int gen, int tail) {
+        for (int k = 0; k < 4; k++) {
+            int n = _map.neighbor(v, k);
+            if (n < 0 || _stamp[n] == gen || _dist[n] != dv + 1) continue;
+            _stamp[n] = gen;
+            _queue[tail++] = n;
+        }
+        return tail;
+    }
+
+    /**
+     * @return true iff {v} (distance {dv}) still has a neighbour one step closer to the source
+     * that is not affected
+     */
+    private boolean supported(int v, int dv, int gen) {
+        for (int k = 0; k < 4; k++) {
+            int n = _map.neighbor(v, k);
+            if (n >= 0 && _stamp[n] != gen && _dist[n] == dv - 1) return true;
+        }
+        return false;
+    }
+
+    private int nextGen() {
+        if (_gen >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(_stamp, 0);
+            _gen = 0;
+        }
+        // even generations mark affected pixels, gen-1 marks the ones found to be unaffected
+        _gen += 2;
+        return _gen;
+    }
+}
@@ -4,7 +4,9 @@ import exe.ex3.game.PacManAlgo;
 import exe.ex3.game.PacmanGame;
 
 import java.awt.*;
-import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import primitives.IntRingDeque;
 
 public class Ex3Algo implements PacManAlgo {
 
@@ -27,7 +29,15 @@ public class Ex3Algo implements PacManAlgo {
     private int lastX = Integer.MIN_VALUE, lastY = Integer.MIN_VALUE;
     private int lastDir = Game.STAY;
     private int stuckCount = 0;
-    private final ArrayDeque<Long> lastPos = new ArrayDeque<>();
+    /** Flat cells (x*h+y) of the last LOOP_MEM positions, oldest first. */
+    private final IntRingDeque lastPos = new IntRingDeque(LOOP_MEM + 1);
+
+    // ghost distances: they only depend on the walls, so they are cached per ghost position
+    private static final int CACHE_ENTRIES = 1024;
+    private static final long CACHE_BYTES = 16L << 20;
+    /** The walls of the level (WALL or FREE), kept across ticks so its version only moves with the walls. */
+    private Map walls;
+    private DistanceCache wallDist;
 
     @Override
     public String getInfo() {
@@ -50,7 +60,7 @@ public class Ex3Algo implements PacManAlgo {
         // stuck/loop memory
         if (px == lastX && py == lastY) stuckCount++;
         else stuckCount = 0;
-        pushPos(px, py);
+        pushPos(px, py, h);
 
         // Build obstacle grid using BLUE wall
         boolean[][] blocked = new boolean[w][h];
@@ -58,10 +68,12 @@ public class Ex3Algo implements PacManAlgo {
             blocked[x][y] = (b[x][y] == WALL);
         }
 
-        // Distance maps
-        int[][] dotDist = multiSourceDistToValue(b, blocked, w, h, DOT);
-        int[][] powDist = multiSourceDistToValue(b, blocked, w, h, POWER);
-        int[][] dangerDist = multiSourceDangerDist(blocked, w, h, ghosts, code);
+        // Distance maps (the game board always wraps around)
+        Map board = new Map(b);
+        board.setCyclic(true);
+        int[][] dotDist = board.allDistanceFromColor(DOT, WALL).getMap();
+        int[][] powDist = board.allDistanceFromColor(POWER, WALL).getMap();
+        int[][] dangerDist = dangerDist(b, w, h, ghosts, code);
 
         int dangerHere = dangerVal(dangerDist[px][py]);
         boolean powerMode = anyEatable(ghosts, code);
@@ -145,7 +157,7 @@ public class Ex3Algo implements PacManAlgo {
             if (b[nx][ny] == POWER) reward += 400; // small bonus; DOT is main win path
 
             int exits = exitsCount(nx, ny, blocked, w, h);
-            int loopPenalty = isRecentPos(nx, ny) ? LOOP_PENALTY : 0;
+            int loopPenalty = isRecentPos(nx, ny, h) ? LOOP_PENALTY : 0;
 
             // DOT dominates when safe; safety only lightly affects unless close
             int score =
@@ -241,7 +253,7 @@ public class Ex3Algo implements PacManAlgo {
                     safety * 3000 +
                             exits * 180 +
                             dotTerm * 40 -
-                            (isRecentPos(nx, ny) ? 200 : 0);
+                            (isRecentPos(nx, ny, h) ? 200 : 0);
 
             if (score > bestScore) {
                 bestScore = score;
@@ -272,7 +284,7 @@ public class Ex3Algo implements PacManAlgo {
             int safety = dangerVal(dangerDist[nx][ny]);
             if (safety <= KILL_ZONE) continue;
 
-            int val = (-dd) * 1000 + safety * 40 - (isRecentPos(nx, ny) ? 2000 : 0);
+            int val = (-dd) * 1000 + safety * 40 - (isRecentPos(nx, ny, h) ? 2000 : 0);
             if (val > best) {
                 best = val;
                 bestDir = d;
@@ -283,85 +295,36 @@ public class Ex3Algo implements PacManAlgo {
 
     // ===================== BFS MAPS =====================
 
-    // Multi-source BFS from all cells with value target (DOT/POWER). -1 unreachable.
-    private int[][] multiSourceDistToValue(int[][] b, boolean[][] blocked, int w, int h, int target) {
-        int[][] dist = new int[w][h];
-        for (int x = 0; x < w; x++) for (int y = 0; y < h; y++) dist[x][y] = -1;
-
-        int max = w * h;
-        int[] qx = new int[max];
-        int[] qy = new int[max];
-        int head = 0, tail = 0;
-
-        for (int x = 0; x < w; x++) for (int y = 0; y < h; y++) {
-            if (blocked[x][y]) continue;
-            if (b[x][y] == target) {
-                dist[x][y] = 0;
-                qx[tail] = x; qy[tail] = y; tail++;
-            }
-        }
-
-        int[] dx = {1, -1, 0, 0};
-        int[] dy = {0, 0, 1, -1};
-
-        while (head < tail) {
-            int x = qx[head], y = qy[head];
-            int d = dist[x][y];
-            head++;
-
-            for (int k = 0; k < 4; k++) {
-                int nx = wrap(x + dx[k], w);
-                int ny = wrap(y + dy[k], h);
-                if (blocked[nx][ny]) continue;
-                if (dist[nx][ny] != -1) continue;
-                dist[nx][ny] = d + 1;
-                qx[tail] = nx; qy[tail] = ny; tail++;
-            }
-        }
-        return dist;
-    }
-
-    // Multi-source BFS from all danger ghosts. -1 means no danger reachable (treat as very safe).
-    private int[][] multiSourceDangerDist(boolean[][] blocked, int w, int h, GhostCL[] ghosts, int code) {
+    // Distance to the nearest danger ghost. -1 means no danger reachable (treat as very safe).
+    // Same as a multi-source BFS from the ghosts, but the BFS of every ghost position is cached.
+    private int[][] dangerDist(int[][] b, int w, int h, GhostCL[] ghosts, int code) {
+        updateWalls(b, w, h);
         int[][] dist = new int[w][h];
-        for (int x = 0; x < w; x++) for (int y = 0; y < h; y++) dist[x][y] = -1;
+        for (int[] col : dist) Arrays.fill(col, -1);
         if (ghosts == null) return dist;
-
-        int max = w * h;
-        int[] qx = new int[max];
-        int[] qy = new int[max];
-        int head = 0, tail = 0;
-
         for (GhostCL g : ghosts) {
             if (g == null) continue;
             if (g.remainTimeAsEatable(code) > 0) continue; // danger only
             int[] gp = parseXY(g.getPos(code));
-            int gx = wrap(gp[0], w), gy = wrap(gp[1], h);
-            if (blocked[gx][gy]) continue;
-            if (dist[gx][gy] == -1) {
-                dist[gx][gy] = 0;
-                qx[tail] = gx; qy[tail] = gy; tail++;
+            MapView d = wallDist.allDistance(new Index2D(wrap(gp[0], w), wrap(gp[1], h)), WALL);
+            for (int x = 0; x < w; x++) for (int y = 0; y < h; y++) {
+                int v = d.getPixel(x, y);
+                if (v >= 0 && (dist[x][y] < 0 || v < dist[x][y])) dist[x][y] = v;
             }
         }
+        return dist;
+    }
 
-        int[] dx = {1, -1, 0, 0};
-        int[] dy = {0, 0, 1, -1};
-
-        while (head < tail) {
-            int x = qx[head], y = qy[head];
-            int d = dist[x][y];
-            head++;
-
-            for (int k = 0; k < 4; k++) {
-                int nx = wrap(x + dx[k], w);
-                int ny = wrap(y + dy[k], h);
-                if (blocked[nx][ny]) continue;
-                if (dist[nx][ny] != -1) continue;
-                dist[nx][ny] = d + 1;
-                qx[tail] = nx; qy[tail] = ny; tail++;
-            }
+    // Copies the walls of the board; unchanged pixels keep the map version (and the cache).
+    private void updateWalls(int[][] b, int w, int h) {
+        if (walls == null || walls.getWidth() != w || walls.getHeight() != h) {
+            walls = new Map(w, h, WALL + 1);
+            walls.setCyclic(true);
+            wallDist = new DistanceCache(walls, CACHE_ENTRIES, CACHE_BYTES);
+        }
+        for (int x = 0; x < w; x++) for (int y = 0; y < h; y++) {
+            walls.setPixel(x, y, (b[x][y] == WALL) ? WALL : WALL + 1);
         }
-        return dist;
     }
 
     // ===================== SMALL HELPERS =====================
@@ -408,7 +371,7 @@ public class Ex3Algo implements PacManAlgo {
             if (isDangerGhostAt(nx, ny, ghosts, code, w, h)) continue;
 
             int safety = dangerVal(dangerDist[nx][ny]);
-            int score = safety * 1000 - (isRecentPos(nx, ny) ? 200 : 0);
+            int score = safety * 1000 - (isRecentPos(nx, ny, h) ? 200 : 0);
 
             if (score > best) { best = score; bestDir = d; }
         }
@@ -417,16 +380,13 @@ public class Ex3Algo implements PacManAlgo {
 
     // ===================== LOOP MEMORY =====================
 
-    private void pushPos(int x, int y) {
-        long key = (((long) x) << 32) ^ (y & 0xffffffffL);
-        lastPos.addLast(key);
-        while (lastPos.size() > LOOP_MEM) lastPos.removeFirst();
+    private void pushPos(int x, int y, int h) {
+        lastPos.addLast(x * h + y);
+        while (lastPos.size() > LOOP_MEM) lastPos.pollFirst();
     }
 
-    private boolean isRecentPos(int x, int y) {
-        long key = (((long) x) << 32) ^ (y & 0xffffffffL);
-        for (long k : lastPos) if (k == key) return true;
-        return false;
+    private boolean isRecentPos(int x, int y, int h) {
+        return lastPos.contains(x * h + y);
     }
 
     private int rememberAndReturn(int px, int py, int dir) {
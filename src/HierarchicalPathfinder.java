@@ -0,0 +1,781 @@
+import java.util.Arrays;
+
+/**
+ * Hierarchical path finding (HPA*) for large maps, where a full BFS per query is too slow.
+ *
+ * The map is cut into square sectors. Along every border between two neighbouring sectors
+ * (including the wrap-around borders of a cyclic map), each maximal run of pixels that are free
+ * on both sides gets one entrance in its middle, or one at each end for long runs. The entrance
+ * pixels are the nodes of an abstract graph:
+ * - inter edges (length 1) join the two pixels of an entrance, across the border
+ * - intra edges join the nodes of a sector, with their BFS distance inside the sector
+ * A query attaches the source and the target to the nodes of their sectors, runs A* over the
+ * abstract graph, and refines the abstract path into pixels with local BFS inside one sector at a
+ * time. Every run of a border has an entrance, so a path is found iff one exists. Because paths
+ * go through entrances, a path can be slightly longer than the shortest one.
+ *
+ * When built on a {@link Map}, the pathfinder follows its changes: a pixel that becomes or stops
+ * being an obstacle marks its sector, and before the next query only the marked sectors (and
+ * the neighbours whose entrances changed) are recomputed. Other {@link Map2D}s report their
+ * changes with {@link #update(int, int)}. This class is not thread safe.
+ */
+public class HierarchicalPathfinder implements Map.ChangeListener {
+    /** Default sector size, in pixels. */
+    public static final int DEFAULT_SECTOR_SIZE = 64;
+    /** Runs at least this long get an entrance at each end, shorter ones a single middle one. */
+    private static final int LONG_RUN = 6;
+    private static final int NONE = -1;
+
+    private final Map2D _map;
+    private final int _obsColor;
+    private final int _size;
+    private boolean _listening;
+
+    private int _w, _h;
+    private boolean _cyclic;
+    private int _sx, _sy;
+    /** Node ids of every sector, and their sector-local distances (k*k, -1 for unreachable). */
+    private int[][] _nodes;
+    private int[][] _intra;
+    private boolean[] _dirty;
+    private int[] _dirtyList;
+    private int _dirtyCount = 0;
+    private boolean _rebuild = true;
+    private int _lastUpdatedSectors = 0;
+
+    /** Flat index of every node id, and the node across each of its 4 sides (0:+x, 1:-x, 2:+y, 3:-y). */
+    private int[] _nodeCell = new int[256];
+    private int[] _partner = new int[1024];
+    private int _nodeCapacity = 0;
+    private int[] _freeIds = new int[64];
+    private int _freeCount = 0;
+    private int _nodeCount = 0;
+
+    /** Local BFS workspace, for one sector (or for the direct source-target search). */
+    private boolean[] _passable;
+    private int[] _ldist, _lstamp, _lqueue, _ltarget;
+    private byte[] _lparent;
+    private int _lgen = 0, _tgen = 0;
+    private int _lx0, _ly0, _lw, _lh;
+    /** True when the loaded sector spans a whole cyclic dimension, so its BFS wraps around. */
+    private boolean _lwrapX, _lwrapY;
+
+    /** Abstract A* workspace, indexed by node id (the target is the extra id _nodeCapacity). */
+    private int[] _g = new int[0], _gstamp = new int[0], _prev = new int[0];
+    private int _agen = 0;
+    private final IntMinHeap _heap = new IntMinHeap();
+    /** Distances from the source and to the target for the nodes of their sectors. */
+    private int[] _fromSource = new int[0], _toTarget = new int[0];
+
+    /**
+     * Builds the abstraction with {@link #DEFAULT_SECTOR_SIZE} sectors.
+     *
+     * @param map the map (followed through a change listener when it is a {@link Map})
+     * @param obsColor value representing an obstacle
+     */
+    public HierarchicalPathfinder(Map2D map, int obsColor) {
+        this(map, obsColor, DEFAULT_SECTOR_SIZE);
+    }
+
+    /**
+     * Builds the abstraction.
+     *
+     * @param map the map (followed through a change listener when it is a {@link Map})
+     * @param obsColor value representing an obstacle
+     * @param sectorSize width and height of the sectors, at least 2
+     * @throws RuntimeException if {map} is null or {sectorSize} is smaller than 2
+     */
+    public HierarchicalPathfinder(Map2D map, int obsColor, int sectorSize) {
+        if (map == null) throw new RuntimeException("map is null");
+        if (sectorSize < 2) throw new RuntimeException("Invalid sector size: " + sectorSize);
+        this._map = map;
+        this._obsColor = obsColor;
+        this._size = sectorSize;
+        int local = sectorSize * sectorSize;
+        this._passable = new boolean[local];
+        this._ldist = new int[local];
+        this._lstamp = new int[local];
+        this._lqueue = new int[local];
+        this._ltarget = new int[local];
+        this._lparent = new byte[local];
+        refresh();
+        if (map instanceof Map) {
+            ((Map) map).addChangeListener(this);
+            _listening = true;
+        }
+    }
+
+    /**
+     * Finds a path between two pixels.
+     *
+     * @param p1 source pixel
+     * @param p2 target pixel
+     * @return the consecutive pixels from {p1} to {p2}, or null when no path exists
+     */
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2) {
+        PixelPath path = new PixelPath();
+        return findPath(p1, p2, path) ? path.toArray() : null;
+    }
+
+    /**
+     * Finds a path between two pixels, into a reusable {@link PixelPath}.
+     *
+     * @param p1 source pixel
+     * @param p2 target pixel
+     * @param path receives the consecutive pixels from {p1} to {p2}; emptied when there is none
+     * @return true iff a path exists
+     * @throws RuntimeException if an argument is null or a pixel is outside the (non cyclic) map
+     */
+    public boolean findPath(Pixel2D p1, Pixel2D p2, PixelPath path) {
+        if (p1 == null || p2 == null) throw new RuntimeException("p1 or p2 is null");
+        if (path == null) throw new RuntimeException("path is null");
+        refresh();
+        path.clear();
+        int s = toIndex(p1);
+        int t = toIndex(p2);
+        if (!free(s) || !free(t)) return false;
+        int ss = sectorOf(s);
+        int ts = sectorOf(t);
+
+        // the source and the target attached to the nodes of their sectors
+        int[] sNodes = _nodes[ss];
+        int[] tNodes = _nodes[ts];
+        ensureAttach(Math.max(sNodes.length, tNodes.length));
+        int direct = Integer.MAX_VALUE;
+        loadSector(ss);
+        int targets = clearTargets();
+        for (int i = 0; i < sNodes.length; i++) targets += addTarget(_nodeCell[sNodes[i]]);
+        if (ss == ts) targets += addTarget(t);
+        localBfs(s, targets);
+        for (int i = 0; i < sNodes.length; i++) _fromSource[i] = localDist(_nodeCell[sNodes[i]]);
+        if (ss == ts) {
+            int d = localDist(t);
+            if (d >= 0) direct = d;
+        }
+        loadSector(ts);
+        targets = clearTargets();
+        for (int i = 0; i < tNodes.length; i++) targets += addTarget(_nodeCell[tNodes[i]]);
+        localBfs(t, targets);
+        for (int i = 0; i < tNodes.length; i++) _toTarget[i] = localDist(_nodeCell[tNodes[i]]);
+
+        // abstract A*: seeded with the source's nodes, the target is the extra node _nodeCapacity
+        int target = _nodeCapacity;
+        int gen = nextAbstractGeneration();
+        IntMinHeap heap = _heap;
+        heap.clear();
+        for (int i = 0; i < sNodes.length; i++) {
+            if (_fromSource[i] >= 0) relax(sNodes[i], _fromSource[i], NONE, t, gen);
+        }
+        if (direct != Integer.MAX_VALUE) relax(target, direct, NONE, t, gen);
+        boolean found = false;
+        while (!heap.isEmpty()) {
+            int u = heap.removeMin();
+            int gu = _g[u];
+            if ((int) heap.lastKey() != gu + heuristic(u, t)) continue; // stale entry
+            if (u == target) {
+                found = true;
+                break;
+            }
+            int sector = sectorOf(_nodeCell[u]);
+            int[] nodes = _nodes[sector];
+            int k = nodes.length;
+            int li = localIndex(nodes, u);
+            int[] intra = _intra[sector];
+            for (int j = 0; j < k; j++) {
+                int d = intra[li * k + j];
+                if (d > 0) relax(nodes[j], gu + d, u, t, gen);
+            }
+            for (int side = 0; side < 4; side++) {
+                int v = _partner[4 * u + side];
+                if (v != NONE) relax(v, gu + 1, u, t, gen);
+            }
+            if (sector == ts) {
+                int d = _toTarget[li];
+                if (d >= 0) relax(target, gu + d, u, t, gen);
+            }
+        }
+        if (!found) return false;
+        refine(s, t, target, path);
+        return true;
+    }
+
+    /**
+     * Marks the sector of (x,y) for recomputation, after the pixel became or stopped being an
+     * obstacle (called automatically when the map is a {@link Map}).
+     *
+     * @throws RuntimeException if (x,y) is outside the map
+     */
+    public void update(int x, int y) {
+        if (_rebuild) return; // everything is recomputed anyway
+        if (x < 0 || y < 0 || x >= _w || y >= _h) {
+            throw new RuntimeException("Pixel out of bounds: (" + x + "," + y + ")");
+        }
+        markDirty((x / _size) * _sy + y / _size);
+    }
+
+    /** @return the number of nodes (entrance pixels) of the abstract graph. */
+    public int getNodeCount() {
+        refresh();
+        return _nodeCount;
+    }
+
+    /** @return the number of sectors. */
+    public int getSectorCount() {
+        return _sx * _sy;
+    }
+
+    /** @return the number of sectors recomputed by the last update (all of them after a rebuild). */
+    public int getLastUpdatedSectors() {
+        return _lastUpdatedSectors;
+    }
+
+    /**
+     * Stops following the map.
+     */
+    public void close() {
+        if (_listening) {
+            ((Map) _map).removeChangeListener(this);
+            _listening = false;
+        }
+    }
+
+    @Override
+    public void pixelChanged(int x, int y, int oldValue, int newValue) {
+        if ((oldValue == _obsColor) != (newValue == _obsColor)) update(x, y);
+    }
+
+    @Override
+    public void mapChanged() {
+        _rebuild = true;
+    }
+
+    // ===================== ABSTRACT GRAPH MAINTENANCE =====================
+
+    /**
+     * Brings the abstract graph up to date: a full build after a bulk change of the map,
+     * otherwise the marked sectors and their neighbours.
+     */
+    private void refresh() {
+        if (_rebuild) {
+            buildAll();
+            return;
+        }
+        if (_dirtyCount == 0) return;
+        // a sector's entrances depend on its pixels and on its neighbours' border pixels, so the
+        // node sets of the neighbours may change too
+        int[] affected = new int[5 * _dirtyCount];
+        int n = 0;
+        for (int i = 0; i < _dirtyCount; i++) {
+            int sec = _dirtyList[i];
+            int si = sec / _sy, sj = sec % _sy;
+            affected[n++] = sec;
+            for (int side = 0; side < 4; side++) {
+                int nb = neighborSector(si, sj, side);
+                if (nb != NONE && !_dirty[nb]) affected[n++] = nb;
+            }
+        }
+        Arrays.sort(affected, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || affected[m - 1] != affected[i]) affected[m++] = affected[i];
+        }
+        int[][] old = new int[m][];
+        for (int i = 0; i < m; i++) {
+            old[i] = _nodes[affected[i]];
+            setNodes(affected[i], entranceCells(affected[i]));
+        }
+        for (int i = 0; i < m; i++) link(affected[i]);
+        int updated = 0;
+        for (int i = 0; i < m; i++) {
+            int sec = affected[i];
+            // an untouched neighbour with the same entrances keeps its distances
+            if (_dirty[sec] || !Arrays.equals(old[i], _nodes[sec])) {
+                computeIntra(sec);
+                updated++;
+            }
+        }
+        for (int i = 0; i < _dirtyCount; i++) _dirty[_dirtyList[i]] = false;
+        _dirtyCount = 0;
+        _lastUpdatedSectors = updated;
+    }
+
+    private void buildAll() {
+        _w = _map.getWidth();
+        _h = _map.getHeight();
+        _cyclic = _map.isCyclic();
+        _sx = (_w + _size - 1) / _size;
+        _sy = (_h + _size - 1) / _size;
+        int sectors = _sx * _sy;
+        _nodes = new int[sectors][];
+        _intra = new int[sectors][];
+        _dirty = new boolean[sectors];
+        _dirtyList = new int[16];
+        _dirtyCount = 0;
+        _nodeCapacity = 0;
+        _freeCount = 0;
+        _nodeCount = 0;
+        Arrays.fill(_nodes, new int[0]);
+        for (int sec = 0; sec < sectors; sec++) setNodes(sec, entranceCells(sec));
+        for (int sec = 0; sec < sectors; sec++) link(sec);
+        for (int sec = 0; sec < sectors; sec++) computeIntra(sec);
+        _rebuild = false;
+        _lastUpdatedSectors = sectors;
+    }
+
+    private void markDirty(int sec) {
+        if (_dirty[sec]) return;
+        _dirty[sec] = true;
+        if (_dirtyCount == _dirtyList.length) _dirtyList = Arrays.copyOf(_dirtyList, 2 * _dirtyCount);
+        _dirtyList[_dirtyCount++] = sec;
+    }
+
+    /**
+     * @return the sorted, distinct entrance pixels of a sector, on its 4 borders
+     */
+    private int[] entranceCells(int sec) {
+        int si = sec / _sy, sj = sec % _sy;
+        int[] cells = new int[16];
+        int n = 0;
+        for (int side = 0; side < 4; side++) {
+            int nb = neighborSector(si, sj, side);
+            if (nb == NONE) continue;
+            int[] pairs = transitions(si, sj, side);
+            for (int i = 0; i < pairs.length; i += 2) {
+                if (n == cells.length) cells = Arrays.copyOf(cells, 2 * n);
+                cells[n++] = pairs[i];
+            }
+        }
+        Arrays.sort(cells, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || cells[m - 1] != cells[i]) cells[m++] = cells[i];
+        }
+        return Arrays.copyOf(cells, m);
+    }
+
+    /**
+     * Computes the entrances on one side of the sector (si,sj).
+     *
+     * @return pairs (pixel inside the sector, pixel across the border), flattened
+     */
+    private int[] transitions(int si, int sj, int side) {
+        int x0 = si * _size, x1 = Math.min(x0 + _size, _w);
+        int y0 = sj * _size, y1 = Math.min(y0 + _size, _h);
+        boolean vertical = side < 2;
+        int inner, outer;
+        if (side == 0) {
+            inner = x1 - 1;
+            outer = (x1 == _w) ? 0 : x1;
+        } else if (side == 1) {
+            inner = x0;
+            outer = (x0 == 0) ? _w - 1 : x0 - 1;
+        } else if (side == 2) {
+            inner = y1 - 1;
+            outer = (y1 == _h) ? 0 : y1;
+        } else {
+            inner = y0;
+            outer = (y0 == 0) ? _h - 1 : y0 - 1;
+        }
+        int from = vertical ? y0 : x0;
+        int to = vertical ? y1 : x1;
+        int[] pairs = new int[8];
+        int n = 0;
+        int run = -1;
+        for (int i = from; i <= to; i++) {
+            boolean open = false;
+            int a = 0, b = 0;
+            if (i < to) {
+                a = vertical ? inner * _h + i : i * _h + inner;
+                b = vertical ? outer * _h + i : i * _h + outer;
+                open = a != b && free(a) && free(b);
+            }
+            if (open && run < 0) run = i;
+            if (!open && run >= 0) {
+                int len = i - run;
+                if (n + 4 > pairs.length) pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+                if (len < LONG_RUN) {
+                    n = addPair(pairs, n, vertical, inner, outer, run + len / 2);
+                } else {
+                    n = addPair(pairs, n, vertical, inner, outer, run);
+                    n = addPair(pairs, n, vertical, inner, outer, i - 1);
+                }
+                run = -1;
+            }
+        }
+        return Arrays.copyOf(pairs, n);
+    }
+
+    private int addPair(int[] pairs, int n, boolean vertical, int inner, int outer, int i) {
+        pairs[n++] = vertical ? inner * _h + i : i * _h + inner;
+        pairs[n++] = vertical ? outer * _h + i : i * _h + outer;
+        return n;
+    }
+
+    /**
+     * Replaces the node set of a sector, keeping the ids of the pixels that stay entrances (so the
+     * links from unaffected neighbours remain valid).
+     */
+    private void setNodes(int sec, int[] cells) {
+        int[] old = _nodes[sec];
+        int[] ids = new int[cells.length];
+        boolean[] kept = new boolean[old.length];
+        for (int i = 0; i < cells.length; i++) {
+            int id = NONE;
+            for (int j = 0; j < old.length; j++) {
+                if (!kept[j] && _nodeCell[old[j]] == cells[i]) {
+                    id = old[j];
+                    kept[j] = true;
+                    break;
+                }
+            }
+            ids[i] = (id != NONE) ? id : newNode(cells[i]);
+        }
+        for (int j = 0; j < old.length; j++) {
+            if (!kept[j]) freeNode(old[j]);
+        }
+        _nodes[sec] = ids;
+    }
+
+    /**
+     * Sets the inter edges of the nodes of a sector, from the entrances on its 4 sides.
+     */
+    private void link(int sec) {
+        int si = sec / _sy, sj = sec % _sy;
+        for (int id : _nodes[sec]) Arrays.fill(_partner, 4 * id, 4 * id + 4, NONE);
+        for (int side = 0; side < 4; side++) {
+            int nb = neighborSector(si, sj, side);
+            if (nb == NONE) continue;
+            int[] pairs = transitions(si, sj, side);
+            for (int i = 0; i < pairs.length; i += 2) {
+                int a = nodeAt(sec, pairs[i]);
+                int b = nodeAt(nb, pairs[i + 1]);
+                if (a != NONE && b != NONE) _partner[4 * a + side] = b;
+            }
+        }
+    }
+
+    /**
+     * Computes the sector-local distances between all the nodes of a sector. The matrix is
+     * symmetric, so the BFS from node i only runs until it has met the nodes after i.
+     */
+    private void computeIntra(int sec) {
+        int[] nodes = _nodes[sec];
+        int k = nodes.length;
+        int[] intra = new int[k * k];
+        loadSector(sec);
+        for (int i = 0; i < k; i++) {
+            int targets = clearTargets();
+            for (int j = i + 1; j < k; j++) targets += addTarget(_nodeCell[nodes[j]]);
+            localBfs(_nodeCell[nodes[i]], targets);
+            for (int j = i + 1; j < k; j++) {
+                int d = localDist(_nodeCell[nodes[j]]);
+                intra[i * k + j] = d;
+                intra[j * k + i] = d;
+            }
+        }
+        _intra[sec] = intra;
+    }
+
+    private int newNode(int cell) {
+        int id;
+        if (_freeCount > 0) {
+            id = _freeIds[--_freeCount];
+        } else {
+            id = _nodeCapacity++;
+            if (id == _nodeCell.length) {
+                _nodeCell = Arrays.copyOf(_nodeCell, 2 * id);
+                _partner = Arrays.copyOf(_partner, 8 * id);
+            }
+        }
+        _nodeCell[id] = cell;
+        Arrays.fill(_partner, 4 * id, 4 * id + 4, NONE);
+        _nodeCount++;
+        return id;
+    }
+
+    private void freeNode(int id) {
+        if (_freeCount == _freeIds.length) _freeIds = Arrays.copyOf(_freeIds, 2 * _freeCount);
+        _freeIds[_freeCount++] = id;
+        _nodeCell[id] = NONE;
+        Arrays.fill(_partner, 4 * id, 4 * id + 4, NONE);
+        _nodeCount--;
+    }
+
+    /**
+     * @return the node id of the pixel {cell} in sector {sec}, or NONE
+     */
+    private int nodeAt(int sec, int cell) {
+        for (int id : _nodes[sec]) {
+            if (_nodeCell[id] == cell) return id;
+        }
+        return NONE;
+    }
+
+    private static int localIndex(int[] nodes, int id) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == id) return i;
+        }
+        throw new RuntimeException("node " + id + " is not in its sector");
+    }
+
+    /**
+     * @return the sector across side {side} (0:+x, 1:-x, 2:+y, 3:-y) of sector (si,sj), or NONE
+     * at the border of a non cyclic map
+     */
+    private int neighborSector(int si, int sj, int side) {
+        switch (side) {
+            case 0: si++; break;
+            case 1: si--; break;
+            case 2: sj++; break;
+            default: sj--; break;
+        }
+        if (si < 0 || si >= _sx || sj < 0 || sj >= _sy) {
+            if (!_cyclic) return NONE;
+            si = Math.floorMod(si, _sx);
+            sj = Math.floorMod(sj, _sy);
+        }
+        return si * _sy + sj;
+    }
+
+    // ===================== SEARCH =====================
+
+    private void relax(int v, int g, int from, int t, int gen) {
+        if (_gstamp[v] == gen && g >= _g[v]) return;
+        _gstamp[v] = gen;
+        _g[v] = g;
+        _prev[v] = from;
+        _heap.add(g + heuristic(v, t), v);
+    }
+
+    /**
+     * Manhattan distance (cyclic aware) from a node to the target pixel, 0 for the target node.
+     */
+    private int heuristic(int v, int t) {
+        if (v == _nodeCapacity) return 0;
+        int c = _nodeCell[v];
+        int dx = Math.abs(c / _h - t / _h);
+        int dy = Math.abs(c % _h - t % _h);
+        if (_cyclic) {
+            dx = Math.min(dx, _w - dx);
+            dy = Math.min(dy, _h - dy);
+        }
+        return dx + dy;
+    }
+
+    private int nextAbstractGeneration() {
+        int n = _nodeCapacity + 1;
+        if (_g.length < n) {
+            int cap = Math.max(n, 2 * _g.length);
+            _g = new int[cap];
+            _gstamp = new int[cap];
+            _prev = new int[cap];
+            _agen = 0;
+        }
+        if (++_agen == 0) {
+            Arrays.fill(_gstamp, 0);
+            _agen = 1;
+        }
+        return _agen;
+    }
+
+    private void ensureAttach(int k) {
+        if (_fromSource.length < k) {
+            _fromSource = new int[k];
+            _toTarget = new int[k];
+        }
+    }
+
+    /**
+     * Turns the abstract path ending at {target} into pixels: a local BFS path for every piece
+     * inside one sector, a single step for every inter edge.
+     */
+    private void refine(int s, int t, int target, PixelPath path) {
+        // abstract nodes from the source side to the target side
+        int count = 0;
+        for (int v = _prev[target]; v != NONE; v = _prev[v]) count++;
+        int[] chain = new int[count + 2];
+        chain[0] = s;
+        chain[count + 1] = t;
+        for (int v = _prev[target], i = count; v != NONE; v = _prev[v], i--) chain[i] = _nodeCell[v];
+
+        int[] cells = path.reset(_g[target] + 1, _h);
+        int len = 0;
+        cells[len++] = s;
+        for (int i = 0; i + 1 < chain.length; i++) {
+            int a = chain[i], b = chain[i + 1];
+            if (a == b) continue;
+            if (i > 0 && i + 2 < chain.length && isPartner(a, b)) {
+                cells[len++] = b; // inter edge
+                continue;
+            }
+            loadSector(sectorOf(a));
+            clearTargets();
+            localBfs(a, addTarget(b));
+            len = appendLocalPath(a, b, cells, len);
+        }
+        path.reset(len, _h);
+    }
+
+    /**
+     * @return true iff the nodes on pixels {a} and {b} are joined by an inter edge
+     */
+    private boolean isPartner(int a, int b) {
+        int id = nodeAt(sectorOf(a), a);
+        for (int side = 0; side < 4; side++) {
+            int v = _partner[4 * id + side];
+            if (v != NONE && _nodeCell[v] == b) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends the local BFS path from {a} (excluded) to {b} (included), found by the last
+     * {@link #localBfs(int, int)}.
+     */
+    private int appendLocalPath(int a, int b, int[] cells, int len) {
+        int steps = localDist(b);
+        int lc = local(b);
+        for (int i = len + steps - 1; i >= len; i--) {
+            cells[i] = (_lx0 + lc / _lh) * _h + _ly0 + lc % _lh;
+            lc = localNeighbor(lc, _lparent[lc] ^ 1);
+        }
+        return len + steps;
+    }
+
+    // ===================== LOCAL BFS =====================
+
+    /**
+     * Loads the obstacles of a sector into the local workspace.
+     */
+    private void loadSector(int sec) {
+        int si = sec / _sy, sj = sec % _sy;
+        _lx0 = si * _size;
+        _ly0 = sj * _size;
+        _lw = Math.min(_size, _w - _lx0);
+        _lh = Math.min(_size, _h - _ly0);
+        _lwrapX = _cyclic && _lw == _w;
+        _lwrapY = _cyclic && _lh == _h;
+        for (int x = 0; x < _lw; x++) {
+            for (int y = 0; y < _lh; y++) {
+                _passable[x * _lh + y] = _map.getPixel(_lx0 + x, _ly0 + y) != _obsColor;
+            }
+        }
+    }
+
+    /**
+     * Starts a new set of targets for the next {@link #localBfs(int, int)}.
+     * @return 0, the number of targets so far
+     */
+    private int clearTargets() {
+        if (++_tgen == 0) {
+            Arrays.fill(_ltarget, 0);
+            _tgen = 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Marks the pixel {c} of the loaded sector as a target of the next local BFS.
+     * @return 1 if it was not a target yet, 0 otherwise
+     */
+    private int addTarget(int c) {
+        int lc = local(c);
+        if (lc < 0 || _ltarget[lc] == _tgen) return 0;
+        _ltarget[lc] = _tgen;
+        return 1;
+    }
+
+    /**
+     * BFS inside the loaded sector from the pixel {s}, stopping early once {targets} of the
+     * marked targets are reached. The BFS works on sector-local indices.
+     */
+    private void localBfs(int s, int targets) {
+        if (++_lgen == 0) {
+            Arrays.fill(_lstamp, 0);
+            _lgen = 1;
+        }
+        int gen = _lgen, tgen = _tgen;
+        int[] stamp = _lstamp, dist = _ldist, queue = _lqueue;
+        boolean[] passable = _passable;
+        int head = 0, tail = 0;
+        int ls = local(s);
+        stamp[ls] = gen;
+        dist[ls] = 0;
+        queue[tail++] = ls;
+        while (head < tail) {
+            int c = queue[head++];
+            if (_ltarget[c] == tgen && --targets <= 0) return;
+            int nd = dist[c] + 1;
+            for (int k = 0; k < 4; k++) {
+                int n = localNeighbor(c, k);
+                if (n < 0 || stamp[n] == gen || !passable[n]) continue;
+                stamp[n] = gen;
+                dist[n] = nd;
+                _lparent[n] = (byte) k;
+                queue[tail++] = n;
+            }
+        }
+    }
+
+    /**
+     * @return the local index of the neighbour of the local index {c} in direction {k}
+     * (0:+x, 1:-x, 2:+y, 3:-y), or -1 if it leaves the loaded sector
+     */
+    private int localNeighbor(int c, int k) {
+        int lh = _lh;
+        switch (k) {
+            case 0:
+                if (c + lh < _lw * lh) return c + lh;
+                return _lwrapX ? c % lh : -1;
+            case 1:
+                if (c >= lh) return c - lh;
+                return _lwrapX ? (_lw - 1) * lh + c : -1;
+            case 2:
+                if ((c + 1) % lh != 0) return c + 1;
+                return _lwrapY ? c + 1 - lh : -1;
+            default:
+                if (c % lh != 0) return c - 1;
+                return _lwrapY ? c + lh - 1 : -1;
+        }
+    }
+
+    /**
+     * @return the distance of the last local BFS to {c}, or -1
+     */
+    private int localDist(int c) {
+        int lc = local(c);
+        return (lc >= 0 && _lstamp[lc] == _lgen) ? _ldist[lc] : -1;
+    }
+
+    /**
+     * @return the local index of the pixel {c} in the loaded sector, or -1 if it is outside
+     */
+    private int local(int c) {
+        int x = c / _h - _lx0;
+        int y = c % _h - _ly0;
+        if (x < 0 || y < 0 || x >= _lw || y >= _lh) return -1;
+        return x * _lh + y;
+    }
+
+    // ===================== PIXELS =====================
+
+    private boolean free(int c) {
+        return _map.getPixel(c / _h, c % _h) != _obsColor;
+    }
+
+    private int sectorOf(int c) {
+        return (c / _h / _size) * _sy + (c % _h) / _size;
+    }
+
+    private int toIndex(Pixel2D p) {
+        int x = p.getX();
+        int y = p.getY();
+        if (_cyclic) {
+            x = Math.floorMod(x, _w);
+            y = Math.floorMod(y, _h);
+        } else if (x < 0 || y < 0 || x >= _w || y >= _h) {
+            throw new RuntimeException("out of bounds");
+        }
+        return x * _h + y;
+    }
+}
@@ -95,9 +95,20 @@ public class Index2D implements Pixel2D {
         /////// you do NOT need to add your code below ///////
         if(t instanceof Pixel2D) {
             Pixel2D p = (Pixel2D) t;
-            ans = (this.distance2D(p)==0);
+            ans = (this._x == p.getX() && this._y == p.getY());
         }
         ///////////////////////////////////
         return ans;
     }
+
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}
+     * (it depends on the coordinates only).
+     *
+     * @return the hash code of the coordinates
+     */
+    @Override
+    public int hashCode() {
+        return 31 * _x + _y;
+    }
 }
@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+/**
+ * A minimal binary min-heap of (long key, int value) pairs, stored in two primitive arrays.
+ * Used as the priority queue of the search algorithms (no boxing, no per-entry objects).
+ * There is no decrease-key: callers push a new entry and skip stale ones when popped.
+ */
+class IntMinHeap {
+    private long[] _keys;
+    private int[] _vals;
+    private int _size;
+    private long _lastKey;
+
+    IntMinHeap() {
+        this(64);
+    }
+
+    IntMinHeap(int capacity) {
+        if (capacity < 4) capacity = 4;
+        _keys = new long[capacity];
+        _vals = new int[capacity];
+    }
+
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    int size() {
+        return _size;
+    }
+
+    void clear() {
+        _size = 0;
+    }
+
+    /**
+     * Adds a value with the given priority (smaller keys are removed first).
+     */
+    void add(long key, int value) {
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, _size * 2);
+            _vals = Arrays.copyOf(_vals, _size * 2);
+        }
+        int i = _size++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (_keys[p] <= key) break;
+            _keys[i] = _keys[p];
+            _vals[i] = _vals[p];
+            i = p;
+        }
+        _keys[i] = key;
+        _vals[i] = value;
+    }
+
+    /**
+     * @return the smallest key in the heap (the heap must not be empty).
+     */
+    long minKey() {
+        return _keys[0];
+    }
+
+    /**
+     * Removes the entry with the smallest key.
+     * Its key is available afterwards through {@link #lastKey()}.
+     *
+     * @return the value of the removed entry (the heap must not be empty)
+     */
+    int removeMin() {
+        int top = _vals[0];
+        _lastKey = _keys[0];
+        int n = --_size;
+        if (n > 0) {
+            long key = _keys[n];
+            int val = _vals[n];
+            int i = 0;
+            while (true) {
+                int c = 2 * i + 1;
+                if (c >= n) break;
+                if (c + 1 < n && _keys[c + 1] < _keys[c]) c++;
+                if (_keys[c] >= key) break;
+                _keys[i] = _keys[c];
+                _vals[i] = _vals[c];
+                i = c;
+            }
+            _keys[i] = key;
+            _vals[i] = val;
+        }
+        return top;
+    }
+
+    /**
+     * @return the key of the entry removed by the last {@link #removeMin()} call.
+     */
+    long lastKey() {
+        return _lastKey;
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.Arrays;
+
+/**
+ * A maze compressed into a weighted graph of its junctions, for point-to-point distances that
+ * do not walk the corridors cell by cell.
+ *
+ * The free (non obstacle) pixels of a {@link Map2D} are split into:
+ * - nodes: the pixels with 1, 3 or 4 free neighbours (junctions and dead ends), isolated pixels,
+ *   and one pixel per closed loop made only of corridor pixels
+ * - corridors: maximal chains of pixels with exactly 2 free neighbours, between two nodes
+ *   (possibly the same node, for a loop)
+ * Every corridor is an edge between its two end nodes, weighted by its length. In a cyclic map
+ * the neighbours wrap around the borders, so a corridor can cross them.
+ *
+ * {@link #distance} attaches the source and the target to the end nodes of their corridors
+ * (or uses their node), then runs Dijkstra over the nodes only; on maze-like maps the graph has
+ * one to two orders of magnitude fewer nodes than the map has pixels. The graph is a
+ * preprocessing of the map at build time: it does not follow later changes of the map.
+ * Queries share a workspace, so this class is not thread safe.
+ */
+public class JunctionGraph {
+    private final int _w, _h;
+    private final boolean _cyclic;
+    private final int _obsColor;
+    /** Node id of every pixel, or -1 (corridor pixels and obstacles). */
+    private final int[] _node;
+    /** Corridor id of every corridor pixel, or -1. */
+    private final int[] _corridor;
+    /** Distance of every corridor pixel from the first end ({@code _endA}) of its corridor. */
+    private final int[] _offset;
+    /** Flat index of every node. */
+    private int[] _nodeCell;
+    private int _nodeCount = 0;
+    /** Ends and length of every corridor. */
+    private int[] _endA, _endB, _length;
+    private int _corridorCount = 0;
+    /** Adjacency of the nodes (compressed rows): the edges of node u are [_adjStart[u], _adjStart[u+1]). */
+    private int[] _adjStart, _adjNode, _adjWeight;
+
+    /** Dijkstra workspace: a distance is valid only if its stamp is the current generation. */
+    private int[] _dist;
+    private int[] _stamp;
+    private int _generation = 0;
+    private final IntMinHeap _heap = new IntMinHeap();
+
+    private JunctionGraph(Map2D map, int obsColor) {
+        this._w = map.getWidth();
+        this._h = map.getHeight();
+        this._cyclic = map.isCyclic();
+        this._obsColor = obsColor;
+        int n = _w * _h;
+        this._node = new int[n];
+        this._corridor = new int[n];
+        this._offset = new int[n];
+        this._nodeCell = new int[64];
+        this._endA = new int[64];
+        this._endB = new int[64];
+        this._length = new int[64];
+    }
+
+    /**
+     * Builds the junction graph of the free pixels of a map.
+     *
+     * @param map the map
+     * @param obsColor value representing an obstacle
+     * @return the graph
+     */
+    public static JunctionGraph build(Map2D map, int obsColor) {
+        if (map == null) throw new RuntimeException("map is null");
+        JunctionGraph g = new JunctionGraph(map, obsColor);
+        g.compress(map);
+        return g;
+    }
+
+    public int getWidth() {
+        return _w;
+    }
+
+    public int getHeight() {
+        return _h;
+    }
+
+    /** @return the obstacle color the graph was built for. */
+    public int getObsColor() {
+        return _obsColor;
+    }
+
+    /** @return the number of nodes (junctions, dead ends, isolated pixels, loop anchors). */
+    public int getNodeCount() {
+        return _nodeCount;
+    }
+
+    /** @return the number of corridors (edges of the graph, loops included). */
+    public int getCorridorCount() {
+        return _corridorCount;
+    }
+
+    /**
+     * @return the pixel of a node
+     * @throws RuntimeException if {node} is not in [0, getNodeCount())
+     */
+    public Pixel2D getNode(int node) {
+        if (node < 0 || node >= _nodeCount) {
+            throw new RuntimeException("Invalid node: " + node);
+        }
+        int c = _nodeCell[node];
+        return new Index2D(c / _h, c % _h);
+    }
+
+    /**
+     * @return the node id of the pixel (x,y), or -1 if it is an obstacle or a corridor pixel
+     * @throws RuntimeException if (x,y) is outside the map
+     */
+    public int getNodeAt(int x, int y) {
+        return _node[toIndex(x, y)];
+    }
+
+    /**
+     * Shortest path distance between two pixels, moving through free pixels only.
+     *
+     * @param p1 source pixel
+     * @param p2 target pixel
+     * @return the number of steps, or -1 if one of the pixels is an obstacle or p2 is unreachable
+     * @throws RuntimeException if a pixel is null or outside the (non cyclic) map
+     */
+    public int distance(Pixel2D p1, Pixel2D p2) {
+        if (p1 == null || p2 == null) {
+            throw new RuntimeException("p1 or p2 is null");
+        }
+        int s = toIndex(p1.getX(), p1.getY());
+        int t = toIndex(p2.getX(), p2.getY());
+        if (!isFree(s) || !isFree(t)) return -1;
+        if (s == t) return 0;
+
+        int best = Integer.MAX_VALUE;
+        int cs = _corridor[s];
+        int ct = _corridor[t];
+        if (cs >= 0 && cs == ct) {
+            // along the corridor, without going through an end node
+            best = Math.abs(_offset[s] - _offset[t]);
+        }
+
+        // the target is reached through its node, or through one of the two ends of its corridor
+        int ta, tb, toA, toB;
+        if (ct < 0) {
+            ta = tb = _node[t];
+            toA = toB = 0;
+        } else {
+            ta = _endA[ct];
+            tb = _endB[ct];
+            toA = _offset[t];
+            toB = _length[ct] - _offset[t];
+        }
+
+        int[] dist = _dist;
+        int[] stamp = _stamp;
+        int gen = nextGeneration();
+        IntMinHeap heap = _heap;
+        heap.clear();
+        if (cs < 0) {
+            seed(_node[s], 0, gen);
+        } else {
+            seed(_endA[cs], _offset[s], gen);
+            seed(_endB[cs], _length[cs] - _offset[s], gen);
+        }
+        while (!heap.isEmpty()) {
+            int u = heap.removeMin();
+            int d = (int) heap.lastKey();
+            if (d != dist[u]) continue;
+            if (d >= best) break;
+            if (u == ta) best = Math.min(best, d + toA);
+            if (u == tb) best = Math.min(best, d + toB);
+            for (int e = _adjStart[u], end = _adjStart[u + 1]; e < end; e++) {
+                int v = _adjNode[e];
+                int nd = d + _adjWeight[e];
+                if (nd < best && (stamp[v] != gen || nd < dist[v])) {
+                    stamp[v] = gen;
+                    dist[v] = nd;
+                    heap.add(nd, v);
+                }
+            }
+        }
+        return (best == Integer.MAX_VALUE) ? -1 : best;
+    }
+
+    /**
+     * Offers the distance {d} to node {u} in the current search.
+     */
+    private void seed(int u, int d, int gen) {
+        if (_stamp[u] != gen || d < _dist[u]) {
+            _stamp[u] = gen;
+            _dist[u] = d;
+            _heap.add(d, u);
+        }
+    }
+
+    private int nextGeneration() {
+        if (++_generation == 0) {
+            Arrays.fill(_stamp, 0);
+            _generation = 1;
+        }
+        return _generation;
+    }
+
+    /**
+     * Classifies the pixels, traces the corridors between the nodes, and builds the adjacency.
+     */
+    private void compress(Map2D map) {
+        int n = _w * _h;
+        boolean[] free = new boolean[n];
+        for (int x = 0; x < _w; x++) {
+            for (int y = 0; y < _h; y++) {
+                free[x * _h + y] = map.getPixel(x, y) != _obsColor;
+            }
+        }
+        Arrays.fill(_node, -1);
+        Arrays.fill(_corridor, -1);
+        int[] nb = new int[4];
+        for (int c = 0; c < n; c++) {
+            if (free[c] && freeNeighbors(c, free, nb) != 2) addNode(c);
+        }
+        for (int u = 0; u < _nodeCount; u++) {
+            traceFrom(u, free, nb);
+        }
+        // what is left are closed loops of corridor pixels: anchor each one with a node
+        for (int c = 0; c < n; c++) {
+            if (free[c] && _node[c] < 0 && _corridor[c] < 0) {
+                traceFrom(addNode(c), free, nb);
+            }
+        }
+        buildAdjacency();
+        _dist = new int[_nodeCount];
+        _stamp = new int[_nodeCount];
+    }
+
+    /**
+     * Follows every corridor leaving node {u} that was not traced yet (from its other end).
+     */
+    private void traceFrom(int u, boolean[] free, int[] nb) {
+        int start = _nodeCell[u];
+        int[] first = new int[4];
+        int k = freeNeighbors(start, free, first);
+        for (int i = 0; i < k; i++) {
+            int cur = first[i];
+            if (_node[cur] >= 0) {
+                // two adjacent nodes: a corridor without inner pixels, added once
+                if (start < cur) addCorridor(u, _node[cur], 1);
+                continue;
+            }
+            if (_corridor[cur] >= 0) continue; // traced from its other end
+            int id = _corridorCount;
+            int prev = start;
+            int len = 1;
+            while (_node[cur] < 0) {
+                _corridor[cur] = id;
+                _offset[cur] = len;
+                freeNeighbors(cur, free, nb);
+                int next = (nb[0] == prev) ? nb[1] : nb[0];
+                prev = cur;
+                cur = next;
+                len++;
+            }
+            addCorridor(u, _node[cur], len);
+        }
+    }
+
+    /**
+     * Writes the distinct free neighbours of {c} (not {c} itself) into {out}.
+     * @return their number
+     */
+    private int freeNeighbors(int c, boolean[] free, int[] out) {
+        int count = 0;
+        for (int k = 0; k < 4; k++) {
+            int m = neighbor(c, k);
+            if (m < 0 || m == c || !free[m]) continue;
+            boolean seen = false;
+            for (int i = 0; i < count; i++) {
+                if (out[i] == m) seen = true;
+            }
+            if (!seen) out[count++] = m;
+        }
+        return count;
+    }
+
+    private int addNode(int c) {
+        if (_nodeCount == _nodeCell.length) {
+            _nodeCell = Arrays.copyOf(_nodeCell, 2 * _nodeCount);
+        }
+        _node[c] = _nodeCount;
+        _nodeCell[_nodeCount] = c;
+        return _nodeCount++;
+    }
+
+    private void addCorridor(int a, int b, int length) {
+        if (_corridorCount == _endA.length) {
+            _endA = Arrays.copyOf(_endA, 2 * _corridorCount);
+            _endB = Arrays.copyOf(_endB, 2 * _corridorCount);
+            _length = Arrays.copyOf(_length, 2 * _corridorCount);
+        }
+        _endA[_corridorCount] = a;
+        _endB[_corridorCount] = b;
+        _length[_corridorCount] = length;
+        _corridorCount++;
+    }
+
+    /**
+     * Builds the compressed adjacency rows: each corridor is an edge in both directions, loops
+     * (a corridor from a node back to itself) never shorten a path and are left out.
+     */
+    private void buildAdjacency() {
+        _adjStart = new int[_nodeCount + 1];
+        for (int e = 0; e < _corridorCount; e++) {
+            if (_endA[e] == _endB[e]) continue;
+            _adjStart[_endA[e] + 1]++;
+            _adjStart[_endB[e] + 1]++;
+        }
+        for (int u = 0; u < _nodeCount; u++) {
+            _adjStart[u + 1] += _adjStart[u];
+        }
+        _adjNode = new int[_adjStart[_nodeCount]];
+        _adjWeight = new int[_adjNode.length];
+        int[] fill = Arrays.copyOf(_adjStart, _nodeCount);
+        for (int e = 0; e < _corridorCount; e++) {
+            int a = _endA[e], b = _endB[e];
+            if (a == b) continue;
+            _adjNode[fill[a]] = b;
+            _adjWeight[fill[a]++] = _length[e];
+            _adjNode[fill[b]] = a;
+            _adjWeight[fill[b]++] = _length[e];
+        }
+    }
+
+    private boolean isFree(int c) {
+        return _node[c] >= 0 || _corridor[c] >= 0;
+    }
+
+    /**
+     * Converts (x,y) into a flat index, wrapping it into the map when cyclic.
+     */
+    private int toIndex(int x, int y) {
+        if (_cyclic) {
+            x = Math.floorMod(x, _w);
+            y = Math.floorMod(y, _h);
+        } else if (x < 0 || y < 0 || x >= _w || y >= _h) {
+            throw new RuntimeException("out of bounds");
+        }
+        return x * _h + y;
+    }
+
+    /**
+     * @return the flat index of the neighbour of {c} in direction k (0:+x, 1:-x, 2:+y, 3:-y),
+     * or -1 outside a non cyclic map
+     */
+    private int neighbor(int c, int k) {
+        int cx = c / _h;
+        int cy = c - cx * _h;
+        switch (k) {
+            case 0: return (cx + 1 < _w) ? c + _h : (_cyclic ? cy : -1);
+            case 1: return (cx > 0) ? c - _h : (_cyclic ? (_w - 1) * _h + cy : -1);
+            case 2: return (cy + 1 < _h) ? c + 1 : (_cyclic ? c - cy : -1);
+            default: return (cy > 0) ? c - 1 : (_cyclic ? c + _h - 1 : -1);
+        }
+    }
+}
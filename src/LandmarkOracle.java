@@ -0,0 +1,336 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Distance bounds between any two pixels of a {@link Map}, from the BFS distances of a few
+ * landmark pixels (the "ALT" technique: A*, Landmarks, Triangle inequality).
+ *
+ * For a landmark L and two pixels a, b, the triangle inequality gives
+ * |d(L,a) - d(L,b)| <= d(a,b) <= d(L,a) + d(L,b). The oracle keeps the tightest of these
+ * bounds over its k landmarks, so a query costs O(k), while the memory is k shorts per pixel
+ * instead of the w*h ints per pixel of an all-pairs table.
+ *
+ * Landmarks are chosen by farthest-point selection: the first one is the pixel farthest from
+ * the first free pixel, and every next one is the free pixel farthest from all the landmarks
+ * so far. A pixel no landmark reaches counts as infinitely far, so the components of the map
+ * get a landmark each (while landmarks remain). Every landmark field comes from
+ * {@link Map#allDistanceParallel} and the selection scan runs in strips over the same
+ * fork/join pool, so large maps are built in parallel; the landmarks and the fields do not
+ * depend on the number of threads.
+ *
+ * The fields are stored interleaved in a single {short[]} (the k distances of a pixel are
+ * adjacent), as unsigned values: {@link #UNREACHED} for pixels a landmark cannot reach, and
+ * {@link #FAR} for distances that do not fit (such a landmark is skipped by the bounds).
+ *
+ * The oracle is a preprocessing of the map: it does not follow later changes of the map, see
+ * {@link #isCurrent(Map)}. Give it to {@link Map#setLandmarks(LandmarkOracle)} to guide the
+ * {@link Map.PathEngine#ALT} searches of {@link Map#shortestPath}.
+ */
+public class LandmarkOracle {
+    /** Maps with fewer pixels are scanned in a single strip. */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    /** Stored value of a pixel the landmark cannot reach (or an obstacle). */
+    static final int UNREACHED = 0xFFFF;
+    /** Stored value of a distance larger than {@link #MAX_DISTANCE}. */
+    static final int FAR = 0xFFFE;
+    /** Largest distance a field can store. */
+    static final int MAX_DISTANCE = 0xFFFD;
+
+    private final Map _source;
+    private final long _version;
+    private final int _w, _h;
+    private final boolean _cyclic;
+    private final int _obsColor;
+    /** Number of landmarks, and their flat indices. */
+    private int _k = 0;
+    /** Number of distances stored per pixel (the requested number of landmarks). */
+    private final int _stride;
+    private final int[] _landmarks;
+    /** The distance from landmark i to pixel c is at {@code _dist[c * _stride + i]}. */
+    private final short[] _dist;
+    /** Selection state: distance from every free pixel to its nearest landmark (-1 for obstacles). */
+    private int[] _nearest;
+
+    private LandmarkOracle(Map map, int obsColor, int k) {
+        this._source = map;
+        this._version = map.getVersion();
+        this._w = map.getWidth();
+        this._h = map.getHeight();
+        this._cyclic = map.isCyclic();
+        this._obsColor = obsColor;
+        this._stride = k;
+        this._landmarks = new int[k];
+        this._dist = new short[_w * _h * k];
+    }
+
+    /**
+     * Builds an oracle with {k} landmarks, using the common fork/join pool for large maps.
+     *
+     * @param map the map
+     * @param obsColor value representing an obstacle
+     * @param k the number of landmarks (fewer are kept if the map has fewer free pixels)
+     * @return the oracle
+     */
+    public static LandmarkOracle build(Map map, int obsColor, int k) {
+        return build(map, obsColor, k, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds an oracle with {k} landmarks, running the BFS levels and the selection scans on {pool}.
+     *
+     * @param map the map
+     * @param obsColor value representing an obstacle
+     * @param k the number of landmarks (fewer are kept if the map has fewer free pixels)
+     * @param pool the fork/join pool to use
+     * @return the oracle
+     * @throws RuntimeException if {map} or {pool} is null, {k} is smaller than 1, or the
+     * fields of {k} landmarks do not fit in an array
+     */
+    public static LandmarkOracle build(Map map, int obsColor, int k, ForkJoinPool pool) {
+        if (map == null) throw new RuntimeException("map is null");
+        if (pool == null) throw new RuntimeException("pool is null");
+        if (k < 1) throw new RuntimeException("Invalid number of landmarks: " + k);
+        if ((long) map.getWidth() * map.getHeight() * k > Integer.MAX_VALUE) {
+            throw new RuntimeException("Too many landmarks for the map size: " + k);
+        }
+        LandmarkOracle ans = new LandmarkOracle(map, obsColor, k);
+        int n = ans._w * ans._h;
+        int strips = 1;
+        if (n >= PARALLEL_THRESHOLD) {
+            strips = Math.min(ans._w, 4 * pool.getParallelism());
+        }
+        int[] starts = new int[strips + 1];
+        for (int s = 0; s <= strips; s++) {
+            starts[s] = (int) ((long) ans._w * s / strips) * ans._h;
+        }
+        int[] best = new int[strips];
+
+        int first = 0;
+        while (first < n && map.get(first) == obsColor) first++;
+        if (first == n) return ans; // no free pixel, no landmark
+
+        int[] nearest = new int[n];
+        for (int i = 0; i < n; i++) {
+            nearest[i] = (map.get(i) == obsColor) ? -1 : Integer.MAX_VALUE;
+        }
+        ans._nearest = nearest;
+
+        // the first BFS only finds a far away starting landmark, its field is not kept
+        int[] dist = bfs(map, first, obsColor, pool);
+        ans.scan(dist, -1, starts, best, pool);
+        int next = argMax(nearest, best);
+        for (int c = 0; c < n; c++) {
+            if (nearest[c] >= 0) nearest[c] = Integer.MAX_VALUE;
+        }
+        while (ans._k < k) {
+            int i = ans._k++;
+            ans._landmarks[i] = next;
+            dist = bfs(map, next, obsColor, pool);
+            ans.scan(dist, i, starts, best, pool);
+            next = argMax(nearest, best);
+            if (nearest[next] == 0) break; // every free pixel is a landmark
+        }
+        ans._nearest = null;
+        return ans;
+    }
+
+    /** @return the number of landmarks. */
+    public int getLandmarkCount() {
+        return _k;
+    }
+
+    /**
+     * @return the i-th landmark
+     */
+    public Pixel2D getLandmark(int i) {
+        if (i < 0 || i >= _k) throw new RuntimeException("Invalid landmark: " + i);
+        return new Index2D(_landmarks[i] / _h, _landmarks[i] % _h);
+    }
+
+    /** @return the obstacle color the oracle was built for. */
+    public int getObsColor() {
+        return _obsColor;
+    }
+
+    /** @return the version of the map the oracle was built from, see {@link Map#getVersion()}. */
+    public long getVersion() {
+        return _version;
+    }
+
+    /**
+     * @return true iff the oracle was built from {map} and the map did not change since
+     */
+    public boolean isCurrent(Map map) {
+        return map == _source && map.getVersion() == _version;
+    }
+
+    /**
+     * @return true iff the oracle was built from {map}
+     */
+    boolean isFor(Map map) {
+        return map == _source;
+    }
+
+    /**
+     * Returns a lower bound of the shortest path length between two pixels.
+     *
+     * @return a value at most d(p1,p2): 0 for the same pixel, {Integer.MAX_VALUE} when a
+     * landmark proves that one of them cannot reach the other (different components, or an
+     * obstacle)
+     * @throws RuntimeException if a pixel is null or outside a non cyclic map
+     */
+    public int lowerBound(Pixel2D p1, Pixel2D p2) {
+        return lowerBound(toIndex(p1), toIndex(p2));
+    }
+
+    /**
+     * Returns an upper bound of the shortest path length between two pixels.
+     *
+     * @return a value at least d(p1,p2): 0 for the same pixel, {Integer.MAX_VALUE} when no
+     * landmark reaches both of them
+     * @throws RuntimeException if a pixel is null or outside a non cyclic map
+     */
+    public int upperBound(Pixel2D p1, Pixel2D p2) {
+        return upperBound(toIndex(p1), toIndex(p2));
+    }
+
+    /**
+     * {@link #lowerBound(Pixel2D, Pixel2D)} of two flat indices (x*h+y), without bounds checking.
+     */
+    int lowerBound(int a, int b) {
+        if (a == b) return 0;
+        short[] dist = _dist;
+        int k = _k;
+        int ia = a * _stride, ib = b * _stride;
+        int ans = 0;
+        for (int i = 0; i < k; i++) {
+            int da = dist[ia + i] & 0xFFFF;
+            int db = dist[ib + i] & 0xFFFF;
+            if (da >= FAR || db >= FAR) {
+                if ((da == UNREACHED) != (db == UNREACHED)) return Integer.MAX_VALUE;
+                continue;
+            }
+            int d = da > db ? da - db : db - da;
+            if (d > ans) ans = d;
+        }
+        return ans;
+    }
+
+    /**
+     * {@link #upperBound(Pixel2D, Pixel2D)} of two flat indices (x*h+y), without bounds checking.
+     */
+    int upperBound(int a, int b) {
+        if (a == b) return 0;
+        short[] dist = _dist;
+        int k = _k;
+        int ia = a * _stride, ib = b * _stride;
+        int ans = Integer.MAX_VALUE;
+        for (int i = 0; i < k; i++) {
+            int da = dist[ia + i] & 0xFFFF;
+            int db = dist[ib + i] & 0xFFFF;
+            if (da >= FAR || db >= FAR) continue;
+            if (da + db < ans) ans = da + db;
+        }
+        return ans;
+    }
+
+    /**
+     * @return the BFS distances from the flat index {s} (-1 for unreachable pixels)
+     */
+    private static int[] bfs(Map map, int s, int obsColor, ForkJoinPool pool) {
+        Pixel2D start = new Index2D(s / map.getHeight(), s % map.getHeight());
+        return ((Map) map.allDistanceParallel(start, obsColor, pool)).rawPixels();
+    }
+
+    /**
+     * Stores the BFS distances {dist} as the field of landmark {i} (none when -1), lowers the
+     * distance of every pixel to its nearest landmark, and leaves the farthest pixel of every
+     * strip in {best}.
+     */
+    private void scan(int[] dist, int i, int[] starts, int[] best, ForkJoinPool pool) {
+        int strips = best.length;
+        if (strips == 1) {
+            best[0] = scanRange(dist, i, starts[0], starts[1]);
+        } else {
+            pool.invoke(new ScanTask(dist, i, starts, best, 0, strips));
+        }
+    }
+
+    /**
+     * {@link #scan} of the flat indices [from, to).
+     * @return the first pixel of the range that is the farthest from the landmarks
+     */
+    private int scanRange(int[] dist, int i, int from, int to) {
+        int[] nearest = _nearest;
+        short[] field = _dist;
+        int stride = _stride;
+        int arg = from;
+        int max = -1;
+        for (int c = from; c < to; c++) {
+            int d = dist[c];
+            if (i >= 0) {
+                field[c * stride + i] = (short) (d < 0 ? UNREACHED : (d > MAX_DISTANCE ? FAR : d));
+            }
+            int m = nearest[c];
+            if (d >= 0 && d < m) nearest[c] = m = d;
+            if (m > max) {
+                max = m;
+                arg = c;
+            }
+        }
+        return arg;
+    }
+
+    /**
+     * @return the first pixel of the farthest ones among the strip winners {best}
+     */
+    private static int argMax(int[] nearest, int[] best) {
+        int arg = best[0];
+        for (int s = 1; s < best.length; s++) {
+            if (nearest[best[s]] > nearest[arg]) arg = best[s];
+        }
+        return arg;
+    }
+
+    private int toIndex(Pixel2D p) {
+        if (p == null) throw new RuntimeException("pixel is null");
+        int x = p.getX();
+        int y = p.getY();
+        if (_cyclic) {
+            x = Math.floorMod(x, _w);
+            y = Math.floorMod(y, _h);
+        } else if (x < 0 || y < 0 || x >= _w || y >= _h) {
+            throw new RuntimeException("Pixel out of bounds: (" + x + "," + y + ")");
+        }
+        return x * _h + y;
+    }
+
+    /**
+     * Runs {@link #scanRange} on the strips [lo, hi).
+     */
+    private class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] dist, starts, best;
+        private final int i, lo, hi;
+
+        ScanTask(int[] dist, int i, int[] starts, int[] best, int lo, int hi) {
+            this.dist = dist;
+            this.i = i;
+            this.starts = starts;
+            this.best = best;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ScanTask(dist, i, starts, best, lo, mid), new ScanTask(dist, i, starts, best, mid, hi));
+            } else {
+                best[lo] = scanRange(dist, i, starts[lo], starts[hi]);
+            }
+        }
+    }
+}
@@ -1,5 +1,14 @@
 
 
+import java.lang.ref.WeakReference;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+import primitives.IntRingDeque;
+import primitives.MultiSourceBfs;
+
 /**
  * This class represents a 2D map (int[w][h]) as a "screen" or a raster matrix or maze over integers.
  * This is the main class needed to be implemented.
@@ -8,8 +17,63 @@
  *
  */
 public class Map implements Map2D{
-private int [][] _map ;
+    /**
+     * The algorithms {@link #shortestPath(Pixel2D, Pixel2D, int)} can use.
+     * All of them return a shortest path (same length), they differ only in how much of the map they explore.
+     */
+    public enum PathEngine {
+        /** Plain breadth-first search from p1, stopping when p2 is reached. */
+        BFS,
+        /** A* search guided by the (cyclic aware) Manhattan distance to p2. */
+        A_STAR,
+        /** Two breadth-first searches, from p1 and from p2, that meet in the middle. */
+        BIDIRECTIONAL,
+        /** Jump point search: A* over the jump points of the 4-connected grid (fast on open areas). */
+        JUMP_POINT,
+        /**
+         * A* guided by the landmark lower bounds of {@link #setLandmarks(LandmarkOracle)} (and the
+         * Manhattan distance); plain {@link #A_STAR} while no current oracle is set.
+         */
+        ALT
+    }
+
+    /**
+     * Receives the changes of a map, see {@link #addChangeListener(ChangeListener)}.
+     * Listeners are called synchronously, after the change was applied.
+     */
+    public interface ChangeListener {
+        /**
+         * A single pixel changed its value ({@code setPixel}); not called when the value is unchanged.
+         */
+        void pixelChanged(int x, int y, int oldValue, int newValue);
+
+        /**
+         * Any pixel may have changed ({@code init}, {@code fill}) or the cyclic flag changed.
+         */
+        void mapChanged();
+    }
+
+/** Flat raster storage, the pixel (x,y) lives at index x*_h+y (see {@link #index(int, int)}). */
+private int [] _map ;
+private int _w, _h;
 private boolean _cyclicFlag = false;
+private PathEngine _pathEngine = PathEngine.BFS;
+/** Modification counter, see {@link #getVersion()}. */
+private long _version = 0;
+/** Maps with fewer pixels than this are not worth a parallel BFS, see {@link #allDistanceParallel}. */
+public static final int PARALLEL_THRESHOLD = 1 << 18;
+/** Registered change listeners, null while there are none (keeps setPixel cheap). */
+private ArrayList<ChangeListener> _listeners = null;
+/** Component labels of the last {@link #components(int)} call, and the version they were computed at. */
+private ComponentLabels _components = null;
+private long _componentsVersion = -1;
+/** Newest snapshot, it gets a copy of every column before its first write (see {@link #snapshot()}). */
+private WeakReference<MapSnapshot> _snapshot = null;
+private MapView _view = null;
+/** Dirty tile trackers of the consumers, null while there are none (see {@link #trackDirty()}). */
+private ArrayList<DirtyRegions> _dirty = null;
+/** Landmark distances guiding the {@link PathEngine#ALT} searches, see {@link #setLandmarks}. */
+private LandmarkOracle _landmarks = null;
     // edit this class below
 	/**
 	 * Constructs a w*h 2D raster map with an init value v.
@@ -53,13 +117,16 @@ private boolean _cyclicFlag = false;
             throw new RuntimeException("Invalid map size");
         }
 
-        this._map = new int[w][h];
-
-        for (int i = 0; i < w; i++) {
-            for (int j = 0; j < h; j++) {
-                this._map[i][j] = v;
-            }
+        if (_snapshot != null) detachSnapshot();
+        this._map = new int[w * h];
+        this._w = w;
+        this._h = h;
+        this._version++;
+        if (v != 0) {
+            java.util.Arrays.fill(this._map, v);
         }
+        if (_dirty != null) markAllDirty();
+        fireMapChanged();
 	}
 
     /**
@@ -92,18 +159,23 @@ private boolean _cyclicFlag = false;
             }
         }
 
-        // deep copy
-        this._map = new int[w][h];
+        // deep copy (one column at a time into the flat buffer)
+        if (_snapshot != null) detachSnapshot();
+        this._map = new int[w * h];
+        this._w = w;
+        this._h = h;
+        this._version++;
         for (int i = 0; i < w; i++) {
-            for (int j = 0; j < h; j++) {
-                this._map[i][j] = arr[i][j];
-            }
+            System.arraycopy(arr[i], 0, this._map, i * h, h);
         }
+        if (_dirty != null) markAllDirty();
+        fireMapChanged();
     }
 
     /**
      * Returns a deep copy of the underlying map to preserve encapsulation.
      * If the map has not been initialized, {null} is returned.
+     * See {@link #view()} and {@link #snapshot()} for read-only access without the copy.
      *
      * @return deep copy of the current map or {null} if uninitialized
      */
@@ -118,12 +190,9 @@ private boolean _cyclicFlag = false;
         int h = this.getHeight();
 
         int [][] deepCopy = new int[w][h];
-    for(int i=0; i<w;i++){
-        for(int j=0;j<h;j++){
-    deepCopy[i][j]= this._map[i][j];
-
+        for (int i = 0; i < w; i++) {
+            System.arraycopy(this._map, i * h, deepCopy[i], 0, h);
         }
-    }
 
 		return deepCopy;
 	}
@@ -137,7 +206,7 @@ private boolean _cyclicFlag = false;
 
 	@Override
 	public int getWidth() {
-        return this._map.length;
+        return this._w;
     }
 
     /**
@@ -149,7 +218,7 @@ private boolean _cyclicFlag = false;
 
 	@Override
 	public int getHeight() {
-        return this._map[0].length;
+        return this._h;
     }
 
     /**
@@ -162,10 +231,10 @@ private boolean _cyclicFlag = false;
      */
 	@Override
 	public int getPixel(int x, int y) {
-        if(x<0 || y<0 || x>=this.getWidth() || y>= this.getHeight()){
+        if(x<0 || y<0 || x>=this._w || y>= this._h){
             throw new RuntimeException("out of bounds");
         }
-        return this._map[x][y];
+        return this._map[x * this._h + y];
     }
 
     /**
@@ -182,12 +251,11 @@ private boolean _cyclicFlag = false;
             throw new RuntimeException("p is null");
         }
         if (p.getX() < 0 || p.getY() < 0 ||
-                p.getX() >= this.getWidth() || p.getY() >= this.getHeight()) {
+                p.getX() >= this._w || p.getY() >= this._h) {
             throw new RuntimeException("Pixel out of bounds: " + p);
         }
 
-        // Index2D other = (Index2D) p;
-        return this._map[p.getX()][p.getY()];
+        return this._map[p.getX() * this._h + p.getY()];
     }
     /**
      * Writes {v} into the coordinate ({x},{y}).
@@ -206,13 +274,20 @@ private boolean _cyclicFlag = false;
             throw new RuntimeException("Map is not initialized");
         }
 
-        if (x < 0 || y < 0 || x >= this.getWidth() || y >= this.getHeight()) {
+        if (x < 0 || y < 0 || x >= this._w || y >= this._h) {
             throw new RuntimeException(
                     "Pixel out of bounds: (" + x + "," + y + ")"
             );
         }
 
-        this._map[x][y] = v;
+        int i = x * this._h + y;
+        int old = this._map[i];
+        if (old == v) return; // unchanged: the version, and everything keyed on it, stays valid
+        if (_snapshot != null) beforeWrite(x);
+        this._map[i] = v;
+        this._version++;
+        if (_dirty != null) markDirty(x, y);
+        if (_listeners != null) firePixelChanged(x, y, old, v);
     }
 
     /**
@@ -229,10 +304,10 @@ private boolean _cyclicFlag = false;
             throw new RuntimeException("p is null");
         }
         if (p.getX() < 0 || p.getY() < 0 ||
-                p.getX() >= this.getWidth() || p.getY() >= this.getHeight()) {
+                p.getX() >= this._w || p.getY() >= this._h) {
             throw new RuntimeException("Pixel out of bounds: " + p);
         }
-        this._map[p.getX()][p.getY()] = v;
+        setPixel(p.getX(), p.getY(), v);
 	}
 
     /**
@@ -255,6 +330,58 @@ private boolean _cyclicFlag = false;
         return true;
     }
 
+    /**
+     * Returns the modification counter of this map. It is incremented by every change of the
+     * pixels ({@code setPixel}, {@code init}, {@code fill}) and of the cyclic flag, so two equal
+     * versions guarantee that results computed from the map (e.g. distances) are still valid.
+     * Writing the value a pixel already holds is not a change and keeps the version.
+     *
+     * @return the current version of this map
+     */
+    public long getVersion() {
+        return _version;
+    }
+
+    /**
+     * @return the algorithm currently used by {@link #shortestPath(Pixel2D, Pixel2D, int)}.
+     */
+    public PathEngine getPathEngine() {
+        return _pathEngine;
+    }
+
+    /**
+     * Selects the algorithm used by {@link #shortestPath(Pixel2D, Pixel2D, int)}.
+     * @param engine the path engine to use
+     * @throws RuntimeException if {engine} is null
+     */
+    public void setPathEngine(PathEngine engine) {
+        if (engine == null) {
+            throw new RuntimeException("engine is null");
+        }
+        _pathEngine = engine;
+    }
+
+    /**
+     * @return the landmark oracle used by {@link PathEngine#ALT}, or null
+     */
+    public LandmarkOracle getLandmarks() {
+        return _landmarks;
+    }
+
+    /**
+     * Sets the landmark oracle guiding the {@link PathEngine#ALT} searches (null to remove it).
+     * The oracle is only used while it is current ({@link LandmarkOracle#isCurrent(Map)}) and
+     * built for the obstacle color of the search, otherwise ALT runs as plain A*.
+     * @param landmarks an oracle built from this map, or null
+     * @throws RuntimeException if {landmarks} was built from another map
+     */
+    public void setLandmarks(LandmarkOracle landmarks) {
+        if (landmarks != null && !landmarks.isFor(this)) {
+            throw new RuntimeException("landmarks were built from another map");
+        }
+        _landmarks = landmarks;
+    }
+
     @Override
     public boolean isCyclic() {
         return _cyclicFlag;
@@ -262,7 +389,92 @@ private boolean _cyclicFlag = false;
 
     @Override
     public void setCyclic(boolean cy) {
-        _cyclicFlag = cy;
+        if (_cyclicFlag != cy) {
+            _cyclicFlag = cy;
+            _version++;
+            fireMapChanged();
+        }
+    }
+
+    /**
+     * Registers a listener that is notified of every change of this map.
+     * @param listener the listener to add
+     * @throws RuntimeException if {listener} is null
+     */
+    public void addChangeListener(ChangeListener listener) {
+        if (listener == null) {
+            throw new RuntimeException("listener is null");
+        }
+        if (_listeners == null) {
+            _listeners = new ArrayList<>();
+        }
+        _listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener (does nothing if it was not registered).
+     * @param listener the listener to remove
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        if (_listeners != null && _listeners.remove(listener) && _listeners.isEmpty()) {
+            _listeners = null;
+        }
+    }
+
+    /**
+     * Starts tracking the regions of this map modified from now on ({@code setPixel},
+     * {@code fill}, {@code init}), see {@link DirtyRegions}. Each call returns a new tracker,
+     * so every consumer clears its own; close it when it is no longer needed.
+     *
+     * @return a new tracker, with no dirty tile
+     * @throws RuntimeException if the map is not initialized
+     */
+    public DirtyRegions trackDirty() {
+        if (_map == null) {
+            throw new RuntimeException("Map is not initialized");
+        }
+        DirtyRegions ans = new DirtyRegions(this);
+        if (_dirty == null) {
+            _dirty = new ArrayList<>();
+        }
+        _dirty.add(ans);
+        return ans;
+    }
+
+    /**
+     * Returns a live read-only view of this map: nothing is copied, and every read sees the
+     * current pixels. Column buffers wrap the current storage, so they are invalidated by
+     * {@code init}.
+     *
+     * @return the read-only view of this map
+     */
+    public MapView view() {
+        if (_view == null) {
+            _view = new LiveView();
+        }
+        return _view;
+    }
+
+    /**
+     * Returns an immutable snapshot of the current pixels and cyclic flag. Taking it copies
+     * nothing; afterwards, the first write to each column copies that column for the snapshot
+     * (see {@link MapSnapshot}). Snapshots taken while the map does not change are the same object.
+     *
+     * @return a snapshot of this map
+     * @throws RuntimeException if the map is not initialized
+     */
+    public MapSnapshot snapshot() {
+        if (_map == null) {
+            throw new RuntimeException("Map is not initialized");
+        }
+        MapSnapshot last = (_snapshot == null) ? null : _snapshot.get();
+        if (last != null && last.getVersion() == _version) {
+            return last;
+        }
+        MapSnapshot ans = new MapSnapshot(this, _w, _h, _cyclicFlag, _version);
+        if (last != null) last.setNext(ans);
+        _snapshot = new WeakReference<>(ans);
+        return ans;
     }
 
 
@@ -320,18 +532,21 @@ private boolean _cyclicFlag = false;
             if (y >= h) y = 0;
         }
 
-        int oldColor = this._map[x][y];
+        int oldColor = this._map[index(x, y)];
         if (oldColor == new_v) {
             return 0;
         }
 
-        return fillDfs(x, y, oldColor, new_v);
+        int filled = fillScanline(x, y, oldColor, new_v);
+        this._version++;
+        fireMapChanged();
+        return filled;
     }
 
     @Override
 	/**
      * Computes the shortest valid path between {p1} and {p2} while avoiding pixels marked {obsColor}.
-     * Uses a BFS-based distance map generated by {allDistance(Pixel2D, int, boolean)} and reconstructs the path
+     * Uses a BFS from {p1} that stops once {p2} is reached, and reconstructs the path
      * by walking backward from the destination. Returns {null} if either endpoint is an obstacle
      * or no valid path exists.
      *
@@ -342,81 +557,141 @@ private boolean _cyclicFlag = false;
      * @return array of consecutive pixels from {p1} to {p2}, or {null} when unreachable
      */
 	public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor) {
-        if (p1 == null||p2==null){
-            throw new RuntimeException("p1 or p2 is null");
-        }
-        int w = getWidth();
-        int h = getHeight();
+        return shortestPath(p1, p2, obsColor, new BfsWorkspace());
+    }
 
-        int x1 = p1.getX();
-        int y1 = p1.getY();
-        int x2 = p2.getX();
-        int y2 = p2.getY();
+    /**
+     * Same as {@link #shortestPath(Pixel2D, Pixel2D, int)}, but runs the BFS inside the given
+     * reusable workspace. The search stops as soon as {p2} is reached, and the path is
+     * reconstructed from the parent directions stored in the workspace, so once the workspace
+     * is large enough the only allocation is the returned path itself.
+     * The search algorithm is the one selected by {@link #setPathEngine(PathEngine)}.
+     *
+     * @param p1 starting point
+     * @param p2 destination point
+     * @param obsColor value treated as an obstacle
+     * @param ws workspace to run the search in (its previous content is discarded)
+     * @return array of consecutive pixels from {p1} to {p2}, or {null} when unreachable
+     */
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, BfsWorkspace ws) {
+        PixelPath path = new PixelPath();
+        return shortestPath(p1, p2, obsColor, ws, path) ? path.toArray() : null;
+    }
 
-        if (!isCyclic()) {
-            if (!this.isInside(p1) || !this.isInside(p2)) {
-                throw new RuntimeException("out of bounds");
-            }
-        }else{
-            x1 = wrap(x1, w);
-            y1 = wrap(y1, h);
-            x2 = wrap(x2, w);
-            y2 = wrap(y2, h);
+    /**
+     * Same as {@link #shortestPath(Pixel2D, Pixel2D, int, BfsWorkspace)}, but writes the path
+     * into a reusable {@link PixelPath} (packed flat indices) instead of allocating one
+     * {@link Pixel2D} per step. With a large enough workspace and path, a query allocates nothing.
+     *
+     * @param p1 starting point
+     * @param p2 destination point
+     * @param obsColor value treated as an obstacle
+     * @param ws workspace to run the search in (its previous content is discarded)
+     * @param path receives the consecutive pixels from {p1} to {p2}; emptied when unreachable
+     * @return true iff {p2} is reachable from {p1}
+     */
+    public boolean shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, BfsWorkspace ws, PixelPath path) {
+        if (p1 == null || p2 == null) {
+            throw new RuntimeException("p1 or p2 is null");
         }
-
-        if (_map[x1][y1] == obsColor || _map[x2][y2] == obsColor) {
-            return null;
+        if (ws == null || path == null) {
+            throw new RuntimeException("workspace or path is null");
+        }
+        path.clear();
+        int s = toIndex(p1);
+        int t = toIndex(p2);
+        if (_map[s] == obsColor || _map[t] == obsColor) {
+            return false;
+        }
+        // O(1) reject of unreachable targets once the components are known (see components())
+        ComponentLabels cc = _components;
+        if (cc != null && _componentsVersion == _version && cc.getObsColor() == obsColor
+                && cc.label(s) != cc.label(t)) {
+            return false;
+        }
+        int endDist;
+        switch (_pathEngine) {
+            case A_STAR: endDist = aStar(s, t, obsColor, ws, null); break;
+            case ALT: endDist = aStar(s, t, obsColor, ws, currentLandmarks(obsColor)); break;
+            case BIDIRECTIONAL:
+                endDist = bidirectional(s, t, obsColor, ws);
+                if (endDist < 0) return false;
+                buildBidirectionalPath(ws, endDist, path);
+                return true;
+            case JUMP_POINT:
+                endDist = jumpPointSearch(s, t, obsColor, ws);
+                if (endDist < 0) return false;
+                buildJumpPath(ws, t, endDist, path);
+                return true;
+            default: endDist = bfs(s, t, obsColor, ws); break;
         }
-
-        Map2D distMap = allDistance(new Index2D(x1, y1), obsColor);
-        int endDist = distMap.getPixel(x2, y2);
         if (endDist < 0) {
-            return null;
+            return false;
         }
+        buildPath(ws, t, endDist, path);
+        return true;
+    }
 
-        Pixel2D[] path = new Pixel2D[endDist + 1];
-        int cx = x2;
-        int cy = y2;
-        int currDist = endDist;
-
-        int[] dx = {1, -1, 0, 0};
-        int[] dy = {0, 0, 1, -1};
-
-        while (currDist >= 0) {
-            path[currDist] = new Index2D(cx, cy);
-            if (currDist == 0) {
-                break;
-            }
-
-            boolean foundPrev = false;
-            for (int k = 0; k < 4 && !foundPrev; k++) {
-                int nx = cx + dx[k];
-                int ny = cy + dy[k];
-
-                if (isCyclic()) {
-                    nx = wrap(nx, w);
-                    ny = wrap(ny, h);
-                } else {
-                    if (nx < 0 || nx >= w || ny < 0 || ny >= h) {
-                        continue;
-                    }
-                }
-
-                if (distMap.getPixel(nx, ny) == currDist - 1) {
-                    cx = nx;
-                    cy = ny;
-                    currDist--;
-                    foundPrev = true;
-                }
-            }
+    /**
+     * Weighted version of {@link #shortestPath(Pixel2D, Pixel2D, int)}: returns a path of
+     * minimal total cost, where entering a pixel costs {@code cost} of it (the start pixel is
+     * free). With unit costs this is the plain shortest path, found by the selected path engine.
+     *
+     * @param p1 starting point
+     * @param p2 destination point
+     * @param obsColor value treated as an obstacle
+     * @param cost the cost of entering each pixel
+     * @return array of consecutive pixels from {p1} to {p2}, or {null} when unreachable
+     */
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, TerrainCost cost) {
+        PixelPath path = new PixelPath();
+        return shortestPath(p1, p2, obsColor, cost, new BfsWorkspace(), path) ? path.toArray() : null;
+    }
 
-            if (!foundPrev) {
-                // Should not happen if distances are consistent
-                return null;
-            }
+    /**
+     * Same as {@link #shortestPath(Pixel2D, Pixel2D, int, TerrainCost)}, with a reusable
+     * workspace and path (see {@link #shortestPath(Pixel2D, Pixel2D, int, BfsWorkspace, PixelPath)}).
+     * Costs in {0,1} run a 0-1 BFS, other costs a Dial bucket queue, unit costs the usual search.
+     *
+     * @param p1 starting point
+     * @param p2 destination point
+     * @param obsColor value treated as an obstacle
+     * @param cost the cost of entering each pixel
+     * @param ws workspace to run the search in (its previous content is discarded)
+     * @param path receives the consecutive pixels from {p1} to {p2}; emptied when unreachable
+     * @return true iff {p2} is reachable from {p1}
+     * @throws RuntimeException if an argument is null, or per pixel costs do not match the map size
+     */
+    public boolean shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, TerrainCost cost, BfsWorkspace ws, PixelPath path) {
+        if (cost == null) {
+            throw new RuntimeException("cost is null");
         }
-
-        return path;
+        cost.checkSize(_w, _h);
+        if (cost.isUnit()) {
+            return shortestPath(p1, p2, obsColor, ws, path);
+        }
+        if (p1 == null || p2 == null) {
+            throw new RuntimeException("p1 or p2 is null");
+        }
+        if (ws == null || path == null) {
+            throw new RuntimeException("workspace or path is null");
+        }
+        path.clear();
+        int s = toIndex(p1);
+        int t = toIndex(p2);
+        if (_map[s] == obsColor || _map[t] == obsColor) {
+            return false;
+        }
+        ComponentLabels cc = _components;
+        if (cc != null && _componentsVersion == _version && cc.getObsColor() == obsColor
+                && cc.label(s) != cc.label(t)) {
+            return false;
+        }
+        if (weighted(s, t, obsColor, cost, ws) < 0) {
+            return false;
+        }
+        buildWeightedPath(ws, s, t, path);
+        return true;
     }
 
     /**
@@ -447,100 +722,1161 @@ private boolean _cyclicFlag = false;
 
         Map result = new Map(w, h, -1);
         result.setCyclic(this.isCyclic());
+        int[] dist = result._map;
 
-        if (_map[sx][sy] == obsColor) {
+        if (_map[index(sx, sy)] == obsColor) {
             return result;
         }
 
-        int maxSize = w * h;
-        int[] qx = new int[maxSize];
-        int[] qy = new int[maxSize];
-        int head = 0, tail = 0;
+        // queue of flat indices (x*h+y), each pixel is enqueued at most once
+        int[] q = new int[w * h];
+        int s = index(sx, sy);
+        dist[s] = 0;
+        q[0] = s;
+        expand(q, 1, obsColor, dist, null);
 
-        result.setPixel(sx, sy, 0);
-        qx[tail] = sx;
-        qy[tail] = sy;
-        tail++;
+        return result;
+    }
 
-        int[] dx = {1, -1, 0, 0};
-        int[] dy = {0, 0, 1, -1};
+    /**
+     * Returns the connected components of the free pixels (see {@link ComponentLabels}),
+     * computing them only if the map changed since the last call (or {obsColor} differs).
+     * While they are current, {@link #shortestPath} returns null right away for two pixels of
+     * different components, instead of exploring the whole component of {p1}.
+     *
+     * @param obsColor value representing an obstacle
+     * @return the component labels of this map (shared, they must not be modified)
+     */
+    public ComponentLabels components(int obsColor) {
+        if (_components == null || _componentsVersion != _version || _components.getObsColor() != obsColor) {
+            _components = ComponentLabels.label(this, obsColor);
+            _componentsVersion = _version;
+        }
+        return _components;
+    }
+
+    /**
+     * Parallel version of {@link #allDistance(Pixel2D, int)}, using the common fork/join pool.
+     * See {@link #allDistanceParallel(Pixel2D, int, ForkJoinPool)}.
+     */
+    public Map2D allDistanceParallel(Pixel2D start, int obsColor) {
+        return allDistanceParallel(start, obsColor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same result as {@link #allDistance(Pixel2D, int)}, but every BFS level is expanded in
+     * parallel on {pool} (a level-synchronous BFS). The result does not depend on the number of
+     * threads. Maps smaller than {@link #PARALLEL_THRESHOLD} pixels, or a pool with a single
+     * thread, fall back to the sequential BFS.
+     *
+     * @param start starting coordinate
+     * @param obsColor value representing an obstacle
+     * @param pool the fork/join pool to run on
+     * @return new {Map2D} of the same size containing distances or {-1} for unreachable entries
+     */
+    public Map2D allDistanceParallel(Pixel2D start, int obsColor, ForkJoinPool pool) {
+        if (start == null) throw new RuntimeException("start is null");
+        if (pool == null) throw new RuntimeException("pool is null");
+        if ((long) _w * _h < PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+            return allDistance(start, obsColor);
+        }
+        return allDistanceLevelSync(start, obsColor, pool);
+    }
+
+    /**
+     * The level-synchronous BFS of {@link #allDistanceParallel(Pixel2D, int, ForkJoinPool)},
+     * without its fallback to the sequential BFS: it runs on {pool} whatever its size (e.g. for
+     * the one thread baseline of {@link ParallelBenchmark}).
+     */
+    Map2D allDistanceLevelSync(Pixel2D start, int obsColor, ForkJoinPool pool) {
+        if (start == null) throw new RuntimeException("start is null");
+        if (pool == null) throw new RuntimeException("pool is null");
+        int s = toIndex(start);
+        Map result = new Map(_w, _h, -1);
+        result.setCyclic(this.isCyclic());
+        if (_map[s] != obsColor) {
+            ParallelBfs.run(this, s, obsColor, result._map, pool);
+        }
+        return result;
+    }
+
+
+    /**
+     * Multi-source version of {@link #allDistance(Pixel2D, int)}: computes, in a single BFS pass,
+     * the distance from every pixel to its nearest source. Sources that are obstacles are ignored,
+     * so with no (valid) source all the pixels are -1.
+     *
+     * @param sources the source pixels (wrapped into the map when it is cyclic)
+     * @param obsColor value representing an obstacle
+     * @return new {Map2D} of the same size containing distances or {-1} for unreachable entries
+     */
+    public Map2D allDistance(Collection<? extends Pixel2D> sources, int obsColor) {
+        return allDistance(sources, obsColor, null);
+    }
+
+    /**
+     * Same as {@link #allDistance(Collection, int)}, and also labels every pixel with the source
+     * it is closest to (a Voronoi partition of the reachable area). Labels are the positions of
+     * the sources in the iteration order of {sources}; on ties the earlier source wins.
+     *
+     * @param sources the source pixels (wrapped into the map when it is cyclic)
+     * @param obsColor value representing an obstacle
+     * @param owner if not null, a map of the same size that receives the label of each pixel
+     *              (-1 for unreachable pixels)
+     * @return new {Map2D} of the same size containing distances or {-1} for unreachable entries
+     * @throws RuntimeException if {sources} (or one of them) is null, a source is out of a
+     *                          non-cyclic map, or {owner} has a different size
+     */
+    public Map2D allDistance(Collection<? extends Pixel2D> sources, int obsColor, Map2D owner) {
+        if (sources == null) throw new RuntimeException("sources is null");
+        if (owner != null && (owner.getWidth() != _w || owner.getHeight() != _h)) {
+            throw new RuntimeException("owner map size does not match");
+        }
+        Map result = new Map(_w, _h, -1);
+        result.setCyclic(this.isCyclic());
+        int[] dist = result._map;
+        int[] labels = (owner == null) ? null : new int[_w * _h];
+
+        int[] q = new int[_w * _h];
+        int tail = 0;
+        int label = 0;
+        for (Pixel2D p : sources) {
+            if (p == null) throw new RuntimeException("source is null");
+            int s = toIndex(p);
+            if (_map[s] != obsColor && dist[s] == -1) {
+                dist[s] = 0;
+                if (labels != null) labels[s] = label;
+                q[tail++] = s;
+            }
+            label++;
+        }
+        expand(q, tail, obsColor, dist, labels);
+
+        if (owner != null) {
+            for (int x = 0, i = 0; x < _w; x++) {
+                for (int y = 0; y < _h; y++, i++) {
+                    owner.setPixel(x, y, (dist[i] == -1) ? -1 : labels[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the distance from every pixel to the nearest pixel of color {srcColor}
+     * (e.g. the nearest DOT), in a single multi-source BFS pass.
+     *
+     * @param srcColor the color of the source pixels
+     * @param obsColor value representing an obstacle
+     * @return new {Map2D} of the same size containing distances or {-1} for unreachable entries
+     */
+    public Map2D allDistanceFromColor(int srcColor, int obsColor) {
+        Map result = new Map(_w, _h, -1);
+        result.setCyclic(this.isCyclic());
+        int[] dist = result._map;
+        if (srcColor == obsColor) {
+            return result;
+        }
+        int n = _w * _h;
+        int[] q = new int[n];
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            if (_map[i] == srcColor) {
+                dist[i] = 0;
+                q[tail++] = i;
+            }
+        }
+        expand(q, tail, obsColor, dist, null);
+        return result;
+    }
+
+    /**
+     * Same as {@link #allDistance(Pixel2D, int)}, but writes the distances into the given
+     * reusable workspace instead of allocating a new map. Read the result with
+     * {@link BfsWorkspace#getDistance(int, int)} (-1 for unreachable pixels).
+     *
+     * @param start starting coordinate
+     * @param obsColor value representing an obstacle
+     * @param ws workspace to run the search in (its previous content is discarded)
+     * @return {ws}, holding the distances from {start}
+     */
+    public BfsWorkspace allDistance(Pixel2D start, int obsColor, BfsWorkspace ws) {
+        if (start == null) throw new RuntimeException("start is null");
+        if (ws == null) throw new RuntimeException("workspace is null");
+
+        int s = toIndex(start);
+        if (_map[s] == obsColor) {
+            ws.begin(_w, _h);
+            return ws;
+        }
+        bfs(s, -1, obsColor, ws);
+        return ws;
+    }
+
+    /**
+     * Weighted version of {@link #allDistance(Pixel2D, int)}: the minimal total cost from
+     * {start} to every pixel, where entering a pixel costs {@code cost} of it. Costs in {0,1}
+     * run a 0-1 BFS, other costs a Dial bucket queue, and unit costs the usual BFS.
+     *
+     * @param start starting coordinate
+     * @param obsColor value representing an obstacle
+     * @param cost the cost of entering each pixel
+     * @return new {Map2D} of the same size containing costs or {-1} for unreachable entries
+     * @throws RuntimeException if an argument is null, or per pixel costs do not match the map size
+     */
+    public Map2D allDistance(Pixel2D start, int obsColor, TerrainCost cost) {
+        if (cost == null) throw new RuntimeException("cost is null");
+        cost.checkSize(_w, _h);
+        if (cost.isUnit()) {
+            return allDistance(start, obsColor);
+        }
+        if (start == null) throw new RuntimeException("start is null");
+        int s = toIndex(start);
+        Map result = new Map(_w, _h, -1);
+        result.setCyclic(this.isCyclic());
+        if (_map[s] == obsColor) {
+            return result;
+        }
+        BfsWorkspace ws = new BfsWorkspace();
+        weighted(s, -1, obsColor, cost, ws);
+        int[] dist = result._map;
+        for (int i = 0; i < dist.length; i++) {
+            if (ws.visited(i)) dist[i] = ws.dist[i];
+        }
+        return result;
+    }
+
+    /**
+     * Same result as calling {@link #allDistance(Pixel2D, int)} for every source, but the BFS
+     * traversals run {@link MultiSourceBfs#BATCH} at a time: one bit-parallel sweep over the free
+     * pixels advances 64 traversals together (see {@link MultiSourceBfs}), which is much faster
+     * than one BFS per source when building distance tables. A batch whose distances do not fit
+     * in a short falls back to one BFS per source.
+     *
+     * @param sources the source pixels (wrapped into the map when it is cyclic)
+     * @param obsColor value representing an obstacle
+     * @return a new {Map2D} of distances for every source, in order ({-1} for unreachable pixels,
+     * all {-1} for a source that is an obstacle)
+     * @throws RuntimeException if {sources} (or one of them) is null, or a source is out of a
+     *                          non-cyclic map
+     */
+    public Map2D[] allDistances(Pixel2D[] sources, int obsColor) {
+        if (sources == null) throw new RuntimeException("sources is null");
+        int n = _w * _h;
+        // compact ids of the free pixels and their adjacency
+        int[] cellToId = new int[n];
+        int free = 0;
+        for (int c = 0; c < n; c++) {
+            cellToId[c] = (_map[c] == obsColor) ? -1 : free++;
+        }
+        int[] idToCell = new int[free];
+        int[] nbr = new int[4 * free];
+        for (int c = 0; c < n; c++) {
+            int id = cellToId[c];
+            if (id < 0) continue;
+            idToCell[id] = c;
+            for (int k = 0; k < 4; k++) {
+                int m = neighbor(c, k);
+                nbr[4 * id + k] = (m < 0) ? -1 : cellToId[m];
+            }
+        }
+
+        Map2D[] ans = new Map2D[sources.length];
+        int[] valid = new int[sources.length];
+        int[] validCells = new int[sources.length];
+        int count = 0;
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] == null) throw new RuntimeException("source is null");
+            int c = toIndex(sources[i]);
+            Map result = new Map(_w, _h, -1);
+            result.setCyclic(this.isCyclic());
+            ans[i] = result;
+            if (cellToId[c] < 0) continue;
+            valid[count] = i;
+            validCells[count++] = c;
+        }
+        if (count == 0) return ans;
+
+        // batches of sources that share many BFS levels
+        int[] order = MultiSourceBfs.batchOrder(java.util.Arrays.copyOf(validCells, count), _h);
+        MultiSourceBfs sweep = new MultiSourceBfs(nbr, free);
+        int[] batch = new int[MultiSourceBfs.BATCH];
+        short[] rows = new short[Math.min(count, MultiSourceBfs.BATCH) * free];
+        for (int from = 0; from < count; from += MultiSourceBfs.BATCH) {
+            int size = Math.min(MultiSourceBfs.BATCH, count - from);
+            for (int j = 0; j < size; j++) {
+                batch[j] = cellToId[validCells[order[from + j]]];
+            }
+            if (sweep.run(batch, 0, size, rows, 0)) {
+                for (int j = 0; j < size; j++) {
+                    int[] dist = ((Map) ans[valid[order[from + j]]])._map;
+                    for (int id = 0, row = j * free; id < free; id++) {
+                        dist[idToCell[id]] = rows[row + id];
+                    }
+                }
+            } else {
+                for (int j = 0; j < size; j++) {
+                    int i = valid[order[from + j]];
+                    ans[i] = allDistance(sources[i], obsColor);
+                }
+            }
+        }
+        return ans;
+    }
+
+    ////////////////////// Internal index-based access ///////////////////////
+
+    /**
+     * Converts a (valid) coordinate into its position in the flat backing buffer.
+     * No bounds checking is performed.
+     *
+     * @param x column index
+     * @param y row index
+     * @return flat index {x*h+y}
+     */
+    int index(int x, int y) {
+        return x * this._h + y;
+    }
+
+    /**
+     * Reads the value stored at a flat index, without bounds checking.
+     *
+     * @param idx flat index as returned by {@link #index(int, int)}
+     * @return the stored value
+     */
+    int get(int idx) {
+        return this._map[idx];
+    }
+
+    /**
+     * Writes a value at a flat index, without bounds checking.
+     *
+     * @param idx flat index as returned by {@link #index(int, int)}
+     * @param v value to assign
+     */
+    void set(int idx, int v) {
+        int old = this._map[idx];
+        if (old == v) return;
+        if (_snapshot != null) beforeWrite(idx / _h);
+        this._map[idx] = v;
+        this._version++;
+        if (_dirty != null) markDirty(idx / _h, idx % _h);
+        if (_listeners != null) firePixelChanged(idx / _h, idx % _h, old, v);
+    }
+
+    /**
+     * @return the flat pixel storage itself (not a copy), for {@link MapSnapshot}
+     */
+    int[] rawPixels() {
+        return this._map;
+    }
+
+    /**
+     * Unregisters a tracker, see {@link DirtyRegions#close()}.
+     */
+    void stopTracking(DirtyRegions tracker) {
+        if (_dirty != null && _dirty.remove(tracker) && _dirty.isEmpty()) {
+            _dirty = null;
+        }
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    private void markDirty(int x, int y) {
+        for (int i = 0; i < _dirty.size(); i++) {
+            _dirty.get(i).markPixel(x, y);
+        }
+    }
+
+    /**
+     * Marks the pixels [lo, lo+len) (mod h) of column x, as painted by a fill span.
+     */
+    private void markDirtySpan(int x, int lo, int len) {
+        int end = lo + len - 1;
+        for (int i = 0; i < _dirty.size(); i++) {
+            DirtyRegions d = _dirty.get(i);
+            if (end < _h) {
+                d.markColumn(x, lo, end);
+            } else {
+                d.markColumn(x, lo, _h - 1);
+                d.markColumn(x, 0, end - _h);
+            }
+        }
+    }
+
+    private void markAllDirty() {
+        for (int i = 0; i < _dirty.size(); i++) {
+            _dirty.get(i).markAll(_w, _h);
+        }
+    }
+
+    /**
+     * Gives the newest snapshot its copy of column x, which is about to be written. The snapshot
+     * is forgotten once it has every column (or nobody holds it anymore).
+     */
+    private void beforeWrite(int x) {
+        MapSnapshot s = _snapshot.get();
+        if (s != null) {
+            s.copy(x, _map);
+            if (!s.isComplete()) return;
+        }
+        _snapshot = null;
+    }
+
+    /**
+     * Gives the newest snapshot all its missing columns, before the storage is replaced.
+     */
+    private void detachSnapshot() {
+        MapSnapshot s = _snapshot.get();
+        if (s != null) s.copyAll(_map);
+        _snapshot = null;
+    }
+
+    private void firePixelChanged(int x, int y, int oldValue, int newValue) {
+        for (int i = 0; i < _listeners.size(); i++) {
+            _listeners.get(i).pixelChanged(x, y, oldValue, newValue);
+        }
+    }
+
+    private void fireMapChanged() {
+        if (_listeners == null) return;
+        for (int i = 0; i < _listeners.size(); i++) {
+            _listeners.get(i).mapChanged();
+        }
+    }
+
+    /**
+     * Plain BFS kernel of the allDistance methods: expands the queue {q}, which initially holds
+     * {tail} sources (already at distance 0), until every reachable pixel has a distance.
+     *
+     * @param q queue of flat indices, large enough for all the pixels of this map
+     * @param tail number of sources at the start of {q}
+     * @param obsColor value representing an obstacle
+     * @param dist distances, -1 for pixels not reached yet
+     * @param owner if not null, the label of each source is copied to the pixels it reaches first
+     */
+    private void expand(int[] q, int tail, int obsColor, int[] dist, int[] owner) {
+        int w = this._w;
+        int h = this._h;
+        int[] map = this._map;
+        boolean cyclic = isCyclic();
+        int last = w * h - h;
+        int head = 0;
 
         while (head < tail) {
-            int cx = qx[head];
-            int cy = qy[head];
-            head++;
+            int c = q[head++];
+            int cx = c / h;
+            int cy = c - cx * h;
+            int nd = dist[c] + 1;
 
             for (int k = 0; k < 4; k++) {
-                int nx = cx + dx[k];
-                int ny = cy + dy[k];
-
-                if (isCyclic()) {
-                    nx = wrap(nx, w);
-                    ny = wrap(ny, h);
-                } else {
-                    if (nx < 0 || nx >= w || ny < 0 || ny >= h) continue;
+                int n;
+                switch (k) {
+                    // right / left neighbours are one column (h cells) apart
+                    case 0: n = (cx + 1 < w) ? c + h : (cyclic ? cy : -1); break;
+                    case 1: n = (cx > 0) ? c - h : (cyclic ? last + cy : -1); break;
+                    // up / down neighbours are adjacent in the flat buffer
+                    case 2: n = (cy + 1 < h) ? c + 1 : (cyclic ? c - cy : -1); break;
+                    default: n = (cy > 0) ? c - 1 : (cyclic ? c + h - 1 : -1); break;
                 }
+                if (n < 0 || dist[n] != -1 || map[n] == obsColor) continue;
+                dist[n] = nd;
+                if (owner != null) owner[n] = owner[c];
+                q[tail++] = n;
+            }
+        }
+    }
 
-                if (_map[nx][ny] == obsColor) continue;
-                if (result.getPixel(nx, ny) != -1) continue;
+    /**
+     * BFS kernel shared by the workspace based algorithms.
+     * Explores from the flat index {s} (which must not be an obstacle), recording distances
+     * and parent directions in {ws}, and stops once the flat index {t} is reached.
+     *
+     * @param s source flat index
+     * @param t target flat index, or -1 to explore the whole reachable region
+     * @param obsColor value representing an obstacle
+     * @param ws workspace to write into
+     * @return the distance to {t}, or -1 if {t} is unreachable (or -1 was given)
+     */
+    private int bfs(int s, int t, int obsColor, BfsWorkspace ws) {
+        int w = this._w;
+        int h = this._h;
+        int[] map = this._map;
+        ws.begin(w, h);
+        int[] q = ws.queue;
+        int[] dist = ws.dist;
+        int[] stamp = ws.stamp;
+        byte[] parent = ws.parent;
+        int gen = ws.gen;
+
+        stamp[s] = gen;
+        dist[s] = 0;
+        parent[s] = BfsWorkspace.NO_PARENT;
+        if (s == t) return 0;
+
+        boolean cyclic = isCyclic();
+        int last = w * h - h;
+        int head = 0, tail = 0;
+        q[tail++] = s;
 
-                result.setPixel(nx, ny, result.getPixel(cx, cy) + 1);
-                qx[tail] = nx;
-                qy[tail] = ny;
-                tail++;
+        while (head < tail) {
+            int c = q[head++];
+            int cx = c / h;
+            int cy = c - cx * h;
+            int nd = dist[c] + 1;
+
+            for (int k = 0; k < 4; k++) {
+                int n;
+                switch (k) {
+                    case 0: n = (cx + 1 < w) ? c + h : (cyclic ? cy : -1); break;
+                    case 1: n = (cx > 0) ? c - h : (cyclic ? last + cy : -1); break;
+                    case 2: n = (cy + 1 < h) ? c + 1 : (cyclic ? c - cy : -1); break;
+                    default: n = (cy > 0) ? c - 1 : (cyclic ? c + h - 1 : -1); break;
+                }
+                if (n < 0 || stamp[n] == gen || map[n] == obsColor) continue;
+                stamp[n] = gen;
+                dist[n] = nd;
+                parent[n] = (byte) k;
+                if (n == t) return nd;
+                q[tail++] = n;
             }
         }
+        return -1;
+    }
 
-        return result;
+    /**
+     * Weighted search kernel: Dijkstra where entering a pixel costs {cost} of it, over small
+     * integer costs, so no comparison heap is needed.
+     * - costs in {0,1}: a 0-1 BFS, a deque where 0-cost steps go to the front and 1-cost steps
+     *   to the back, so the deque always holds two consecutive distances in order
+     * - larger costs: Dial's algorithm, a circular array of maxCost+1 buckets where the pixels of
+     *   tentative distance d wait in bucket d % (maxCost+1), emptied for d = 0, 1, 2, ...
+     * A pixel is queued again when its distance improves; the older entries are skipped since the
+     * pixel is already settled (the settled flags live in {ws.side}).
+     *
+     * @param s source flat index (not an obstacle)
+     * @param t target flat index, or -1 to reach the whole component of {s}
+     * @param obsColor value representing an obstacle
+     * @param cost the cost of entering each pixel (not all 1)
+     * @param ws workspace to write into (costs in {ws.dist}, parents like {@link #bfs})
+     * @return the cost to {t}, or -1 if it is unreachable (always -1 when {t} is -1)
+     */
+    private int weighted(int s, int t, int obsColor, TerrainCost cost, BfsWorkspace ws) {
+        int w = this._w;
+        int h = this._h;
+        int[] map = this._map;
+        ws.begin(w, h);
+        int[] dist = ws.dist;
+        int[] stamp = ws.stamp;
+        byte[] parent = ws.parent;
+        byte[] settled = ws.side;
+        int gen = ws.gen;
+        boolean cyclic = isCyclic();
+        int last = w * h - h;
+
+        int buckets = cost.getMaxCost() + 1;
+        boolean zeroOne = buckets <= 2;
+        IntRingDeque[] queue = ws.buckets(zeroOne ? 1 : buckets);
+        stamp[s] = gen;
+        dist[s] = 0;
+        parent[s] = BfsWorkspace.NO_PARENT;
+        settled[s] = 0;
+        queue[0].addLast(s);
+        int pending = 1;
+
+        for (int d = 0; pending > 0; d++) {
+            IntRingDeque bucket = queue[zeroOne ? 0 : d % buckets];
+            while (!bucket.isEmpty()) {
+                int c = bucket.pollFirst();
+                pending--;
+                if (settled[c] != 0) continue;
+                settled[c] = 1;
+                if (c == t) return dist[c];
+                int dc = dist[c]; // d in Dial's buckets, the head of the 0-1 deque otherwise
+                int cx = c / h;
+                int cy = c - cx * h;
+                for (int k = 0; k < 4; k++) {
+                    int n;
+                    switch (k) {
+                        case 0: n = (cx + 1 < w) ? c + h : (cyclic ? cy : -1); break;
+                        case 1: n = (cx > 0) ? c - h : (cyclic ? last + cy : -1); break;
+                        case 2: n = (cy + 1 < h) ? c + 1 : (cyclic ? c - cy : -1); break;
+                        default: n = (cy > 0) ? c - 1 : (cyclic ? c + h - 1 : -1); break;
+                    }
+                    if (n < 0) continue;
+                    int color = map[n];
+                    if (color == obsColor) continue;
+                    int step = cost.cost(n, color);
+                    int nd = dc + step;
+                    if (stamp[n] == gen) {
+                        if (dist[n] <= nd) continue;
+                    } else {
+                        stamp[n] = gen;
+                        settled[n] = 0;
+                    }
+                    dist[n] = nd;
+                    parent[n] = (byte) k;
+                    pending++;
+                    if (!zeroOne) {
+                        queue[nd % buckets].addLast(n);
+                    } else if (step == 0) {
+                        bucket.addFirst(n);
+                    } else {
+                        bucket.addLast(n);
+                    }
+                }
+            }
+        }
+        return -1;
     }
 
+    /**
+     * A* kernel: a best-first search from {s} to {t} ordered by g+h, where h is the Manhattan
+     * distance to {t} (taking the shorter way around each axis when the map is cyclic).
+     * The heuristic is consistent, so the first time {t} is removed from the queue its distance
+     * is optimal - the same length BFS finds - while only the region around the path is explored.
+     * Ties on g+h are broken in favour of the larger g (deeper nodes first).
+     * With landmarks, h is the larger of the Manhattan distance and the landmark lower bound
+     * (both are admissible, and a pixel reached again with a smaller g is expanded again).
+     *
+     * @param s source flat index (not an obstacle)
+     * @param t target flat index (not an obstacle)
+     * @param obsColor value representing an obstacle
+     * @param ws workspace to write into (distances and parents, like {@link #bfs})
+     * @param lm current landmarks for {obsColor}, or null
+     * @return the distance to {t}, or -1 if it is unreachable
+     */
+    private int aStar(int s, int t, int obsColor, BfsWorkspace ws, LandmarkOracle lm) {
+        int w = this._w;
+        int h = this._h;
+        int[] map = this._map;
+        ws.begin(w, h);
+        int[] dist = ws.dist;
+        int[] stamp = ws.stamp;
+        byte[] parent = ws.parent;
+        int gen = ws.gen;
+        IntMinHeap open = ws.heap();
+
+        boolean cyclic = isCyclic();
+        int last = w * h - h;
+        int tx = t / h;
+        int ty = t - tx * h;
+
+        int hs = manhattan(s / h, s % h, tx, ty);
+        if (lm != null) {
+            int lb = lm.lowerBound(s, t);
+            if (lb == Integer.MAX_VALUE) return -1; // a landmark proves t unreachable
+            hs = Math.max(hs, lb);
+        }
+        stamp[s] = gen;
+        dist[s] = 0;
+        parent[s] = BfsWorkspace.NO_PARENT;
+        open.add(aStarKey(hs, 0), s);
+
+        while (!open.isEmpty()) {
+            int c = open.removeMin();
+            int g = dist[c];
+            if (c == t) return g;
+            // skip stale entries (c was pushed again with a smaller g)
+            int hc = manhattan(c / h, c % h, tx, ty);
+            if (lm != null) hc = Math.max(hc, lm.lowerBound(c, t));
+            if (open.lastKey() != aStarKey(g + hc, g)) continue;
+
+            int cx = c / h;
+            int cy = c - cx * h;
+            int ng = g + 1;
+            for (int k = 0; k < 4; k++) {
+                int n;
+                switch (k) {
+                    case 0: n = (cx + 1 < w) ? c + h : (cyclic ? cy : -1); break;
+                    case 1: n = (cx > 0) ? c - h : (cyclic ? last + cy : -1); break;
+                    case 2: n = (cy + 1 < h) ? c + 1 : (cyclic ? c - cy : -1); break;
+                    default: n = (cy > 0) ? c - 1 : (cyclic ? c + h - 1 : -1); break;
+                }
+                if (n < 0 || map[n] == obsColor) continue;
+                if (stamp[n] == gen && dist[n] <= ng) continue;
+                stamp[n] = gen;
+                dist[n] = ng;
+                parent[n] = (byte) k;
+                int nx = n / h;
+                int hn = manhattan(nx, n - nx * h, tx, ty);
+                if (lm != null) hn = Math.max(hn, lm.lowerBound(n, t));
+                open.add(aStarKey(ng + hn, ng), n);
+            }
+        }
+        return -1;
+    }
 
-    ////////////////////// Private Methods ///////////////////////
+    /**
+     * @return the landmarks of {@link #setLandmarks} if they are current for {obsColor}, or null
+     */
+    private LandmarkOracle currentLandmarks(int obsColor) {
+        LandmarkOracle lm = _landmarks;
+        if (lm == null || !lm.isCurrent(this) || lm.getObsColor() != obsColor) return null;
+        return lm;
+    }
 
     /**
-     * Recursively fills the connected component using a depth-first search (DFS).
+     * Bidirectional BFS kernel: grows a BFS from {s} and a BFS from {t}, one whole level at a time,
+     * always advancing the side with the smaller frontier. When a level touches a pixel already
+     * reached by the other side, the level is completed and the best meeting edge is kept, which
+     * gives an optimal path. Both queues share the workspace queue: the forward one grows from
+     * the start of the buffer and the backward one from its end (a pixel is enqueued once at most).
+     * The meeting edge is stored in {ws.meetFwd}/{ws.meetBwd} for {@link #buildBidirectionalPath}.
      *
-     * Starting from the pixel at coordinates (x, y), this method:
-     * - checks boundary conditions (or wraps coordinates if cyclic is true)
-     * - verifies that the pixel has the original color oldColor
-     * - paints the pixel with the new color new_v
-     * - continues the fill process on the four neighboring pixels
+     * @param s source flat index (not an obstacle)
+     * @param t target flat index (not an obstacle)
+     * @param obsColor value representing an obstacle
+     * @param ws workspace to write into
+     * @return the distance from {s} to {t}, or -1 if it is unreachable
+     */
+    private int bidirectional(int s, int t, int obsColor, BfsWorkspace ws) {
+        int w = this._w;
+        int h = this._h;
+        int[] map = this._map;
+        ws.begin(w, h);
+        int[] q = ws.queue;
+        int[] dist = ws.dist;
+        int[] stamp = ws.stamp;
+        byte[] parent = ws.parent;
+        byte[] side = ws.side;
+        int gen = ws.gen;
+
+        stamp[s] = gen;
+        dist[s] = 0;
+        parent[s] = BfsWorkspace.NO_PARENT;
+        side[s] = 0;
+        ws.meetFwd = s;
+        ws.meetBwd = s;
+        if (s == t) return 0;
+        stamp[t] = gen;
+        dist[t] = 0;
+        parent[t] = BfsWorkspace.NO_PARENT;
+        side[t] = 1;
+
+        boolean cyclic = isCyclic();
+        int last = w * h - h;
+        // forward queue: q[fHead..fTail), backward queue: q(bTail..bHead]
+        int fHead = 0, fTail = 0;
+        int bHead = w * h - 1, bTail = bHead;
+        q[fTail++] = s;
+        q[bTail--] = t;
+        int best = Integer.MAX_VALUE;
+
+        while (fHead < fTail && bHead > bTail) {
+            boolean forward = (fTail - fHead) <= (bHead - bTail);
+            byte me = forward ? (byte) 0 : (byte) 1;
+            int count = forward ? fTail - fHead : bHead - bTail;
+
+            for (int i = 0; i < count; i++) {
+                int c = forward ? q[fHead++] : q[bHead--];
+                int cx = c / h;
+                int cy = c - cx * h;
+                int nd = dist[c] + 1;
+                for (int k = 0; k < 4; k++) {
+                    int n;
+                    switch (k) {
+                        case 0: n = (cx + 1 < w) ? c + h : (cyclic ? cy : -1); break;
+                        case 1: n = (cx > 0) ? c - h : (cyclic ? last + cy : -1); break;
+                        case 2: n = (cy + 1 < h) ? c + 1 : (cyclic ? c - cy : -1); break;
+                        default: n = (cy > 0) ? c - 1 : (cyclic ? c + h - 1 : -1); break;
+                    }
+                    if (n < 0 || map[n] == obsColor) continue;
+                    if (stamp[n] == gen) {
+                        if (side[n] != me && nd + dist[n] < best) {
+                            best = nd + dist[n];
+                            ws.meetFwd = forward ? c : n;
+                            ws.meetBwd = forward ? n : c;
+                        }
+                        continue;
+                    }
+                    stamp[n] = gen;
+                    dist[n] = nd;
+                    parent[n] = (byte) k;
+                    side[n] = me;
+                    if (forward) q[fTail++] = n;
+                    else q[bTail--] = n;
+                }
+            }
+            if (best != Integer.MAX_VALUE) return best;
+        }
+        return -1;
+    }
+
+    /**
+     * Jump point search kernel, adapted to a 4-connected (and possibly cyclic) grid.
+     * Paths are searched in a canonical form where straight runs along y are only interrupted at
+     * "jump points":
+     * - a y-scan ({@link #jumpY}) stops at the target, or at a pixel with a forced neighbour, i.e. a
+     *   side pixel (x+-1) that is free while the side pixel one step behind is an obstacle.
+     * - an x-jump ({@link #jumpX}) stops at the target, or at a pixel from which a y-scan (up or down)
+     *   finds a jump point.
+     * A* (same heuristic and tie breaking as {@link #aStar}) then runs over jump points only, with
+     * the length of each straight jump as its cost, so open areas are crossed in a few expansions.
+     * Scans are bounded by the width/height, so they also terminate on cyclic rows and columns.
+     *
+     * @param s source flat index (not an obstacle)
+     * @param t target flat index (not an obstacle)
+     * @param obsColor value representing an obstacle
+     * @param ws workspace to write into: distances, the direction of the jump that reached each
+     *           jump point, and its previous jump point ({@link BfsWorkspace#jumpFrom()})
+     * @return the distance to {t}, or -1 if it is unreachable
+     */
+    private int jumpPointSearch(int s, int t, int obsColor, BfsWorkspace ws) {
+        int h = this._h;
+        ws.begin(this._w, h);
+        int[] dist = ws.dist;
+        int[] stamp = ws.stamp;
+        byte[] parent = ws.parent;
+        int[] from = ws.jumpFrom();
+        int gen = ws.gen;
+        IntMinHeap open = ws.heap();
+
+        int tx = t / h;
+        int ty = t - tx * h;
+
+        stamp[s] = gen;
+        dist[s] = 0;
+        parent[s] = BfsWorkspace.NO_PARENT;
+        from[s] = s;
+        open.add(aStarKey(manhattan(s / h, s % h, tx, ty), 0), s);
+
+        while (!open.isEmpty()) {
+            int c = open.removeMin();
+            int g = dist[c];
+            if (c == t) return g;
+            int cx = c / h;
+            int cy = c - cx * h;
+            if (open.lastKey() != aStarKey(g + manhattan(cx, cy, tx, ty), g)) continue;
+
+            for (int k = 0; k < 4; k++) {
+                // never jump straight back towards the previous jump point
+                if (parent[c] != BfsWorkspace.NO_PARENT && k == (parent[c] ^ 1)) continue;
+                long jump;
+                switch (k) {
+                    case 0: jump = jumpX(cx, cy, 1, t, obsColor); break;
+                    case 1: jump = jumpX(cx, cy, -1, t, obsColor); break;
+                    case 2: jump = jumpY(cx, cy, 1, t, obsColor); break;
+                    default: jump = jumpY(cx, cy, -1, t, obsColor); break;
+                }
+                if (jump < 0) continue;
+                int n = (int) jump;
+                int ng = g + (int) (jump >>> 32);
+                if (stamp[n] == gen && dist[n] <= ng) continue;
+                stamp[n] = gen;
+                dist[n] = ng;
+                parent[n] = (byte) k;
+                from[n] = c;
+                int nx = n / h;
+                open.add(aStarKey(ng + manhattan(nx, n - nx * h, tx, ty), ng), n);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scans from (x,y) along the y axis (dy = +1 or -1) for the next jump point: the target, or a
+     * pixel with a forced neighbour on either side.
      *
-     * The coloring itself is used as a "visited" marker to prevent infinite recursion.
+     * @return the jump point packed as (steps << 32 | flat index), or -1 if the scan hits an
+     * obstacle, the border of a non-cyclic map, or comes back to (x,y)
+     */
+    private long jumpY(int x, int y, int dy, int t, int obsColor) {
+        int w = this._w;
+        int h = this._h;
+        int[] map = this._map;
+        boolean cyclic = isCyclic();
+        int base = x * h;
+        int left = (x > 0) ? base - h : (cyclic ? (w - 1) * h : -1);
+        int right = (x + 1 < w) ? base + h : (cyclic ? 0 : -1);
+
+        int cy = y;
+        for (long steps = 1; ; steps++) {
+            int ny = cy + dy;
+            if (ny < 0 || ny >= h) {
+                if (!cyclic) return -1;
+                ny = (ny < 0) ? h - 1 : 0;
+            }
+            if (ny == y) return -1;
+            int n = base + ny;
+            if (map[n] == obsColor) return -1;
+            if (n == t) return (steps << 32) | n;
+            if (left >= 0 && map[left + ny] != obsColor && map[left + cy] == obsColor) return (steps << 32) | n;
+            if (right >= 0 && map[right + ny] != obsColor && map[right + cy] == obsColor) return (steps << 32) | n;
+            cy = ny;
+        }
+    }
+
+    /**
+     * Moves from (x,y) along the x axis (dx = +1 or -1) until reaching the target, or a pixel from
+     * which a y-scan in either direction finds a jump point.
      *
-     * @param x the x-coordinate of the current pixel
-     * @param y the y-coordinate of the current pixel
-     * @param oldColor the original color of the connected component
-     * @param new_v the new color to apply
-     * @return the number of pixels filled by this call and its recursive calls
+     * @return the jump point packed as (steps << 32 | flat index), or -1 if the move hits an
+     * obstacle, the border of a non-cyclic map, or comes back to (x,y)
      */
-    private int fillDfs(int x, int y, int oldColor, int new_v) {
-        int w = getWidth();
-        int h = getHeight();
-        
+    private long jumpX(int x, int y, int dx, int t, int obsColor) {
+        int w = this._w;
+        int h = this._h;
+        int[] map = this._map;
+        boolean cyclic = isCyclic();
+
+        int cx = x;
+        for (long steps = 1; ; steps++) {
+            int nx = cx + dx;
+            if (nx < 0 || nx >= w) {
+                if (!cyclic) return -1;
+                nx = (nx < 0) ? w - 1 : 0;
+            }
+            if (nx == x) return -1;
+            int n = nx * h + y;
+            if (map[n] == obsColor) return -1;
+            if (n == t || nx == t / h) return (steps << 32) | n;
+            if (jumpY(nx, y, 1, t, obsColor) >= 0 || jumpY(nx, y, -1, t, obsColor) >= 0) {
+                return (steps << 32) | n;
+            }
+            cx = nx;
+        }
+    }
+
+    /**
+     * Packs an A* priority: smaller f first, and for equal f the larger g first.
+     */
+    private static long aStarKey(int f, int g) {
+        return ((long) f << 32) | (Integer.MAX_VALUE - g);
+    }
+
+    /**
+     * @return the Manhattan distance between two pixels of this map, using the shorter way
+     * around each axis when the map is cyclic.
+     */
+    int manhattan(int x1, int y1, int x2, int y2) {
+        int dx = Math.abs(x1 - x2);
+        int dy = Math.abs(y1 - y2);
         if (isCyclic()) {
-            if (x < 0) x = w - 1;
-            if (x >= w) x = 0;
-            if (y < 0) y = h - 1;
-            if (y >= h) y = 0;
-        } else {
-            if (x < 0 || x >= w || y < 0 || y >= h) {
-                return 0;
+            dx = Math.min(dx, _w - dx);
+            dy = Math.min(dy, _h - dy);
+        }
+        return dx + dy;
+    }
+
+    /**
+     * Rebuilds the path ending at {t} into {path} by following the parent directions of the last
+     * search in {ws}.
+     *
+     * @param ws workspace holding the search
+     * @param t target flat index
+     * @param len distance from the source to {t}
+     * @param path receives the {len+1} consecutive flat indices
+     */
+    private void buildPath(BfsWorkspace ws, int t, int len, PixelPath path) {
+        int[] cells = path.reset(len + 1, _h);
+        int c = t;
+        for (int i = len; i >= 0; i--) {
+            cells[i] = c;
+            if (i > 0) {
+                // directions come in opposite pairs: 0<->1, 2<->3
+                c = neighbor(c, ws.parent[c] ^ 1);
             }
         }
+    }
 
-        if (this._map[x][y] != oldColor) {
-            return 0;
+    /**
+     * Rebuilds the path of the last weighted search in {ws} from {s} to {t}: its number of steps
+     * is not its cost, so the parent chain is measured first.
+     */
+    private void buildWeightedPath(BfsWorkspace ws, int s, int t, PixelPath path) {
+        int len = 0;
+        for (int c = t; c != s; c = neighbor(c, ws.parent[c] ^ 1)) {
+            len++;
+        }
+        buildPath(ws, t, len, path);
+    }
+
+    /**
+     * Rebuilds the path of the last bidirectional search in {ws}: the forward half is walked back
+     * from the meeting pixel to the source, and the backward half forward to the target, both by
+     * following the stored parent directions.
+     *
+     * @param ws workspace holding the search
+     * @param len distance from the source to the target
+     * @param path receives the {len+1} consecutive flat indices
+     */
+    private void buildBidirectionalPath(BfsWorkspace ws, int len, PixelPath path) {
+        int[] cells = path.reset(len + 1, _h);
+        int c = ws.meetFwd;
+        for (int i = ws.dist[c]; i >= 0; i--) {
+            cells[i] = c;
+            if (i > 0) c = neighbor(c, ws.parent[c] ^ 1);
         }
+        if (len == 0) return;
+        c = ws.meetBwd;
+        for (int i = len - ws.dist[c]; i <= len; i++) {
+            cells[i] = c;
+            if (i < len) c = neighbor(c, ws.parent[c] ^ 1);
+        }
+    }
+
+    /**
+     * Rebuilds the path of the last jump point search in {ws}, expanding every jump back into the
+     * straight run of pixels it covers.
+     *
+     * @param ws workspace holding the search
+     * @param t target flat index
+     * @param len distance from the source to {t}
+     * @param path receives the {len+1} consecutive flat indices
+     */
+    private void buildJumpPath(BfsWorkspace ws, int t, int len, PixelPath path) {
+        int[] cells = path.reset(len + 1, _h);
+        int[] from = ws.jumpFrom();
+        int c = t;
+        int i = len;
+        while (i > 0) {
+            int back = ws.parent[c] ^ 1;
+            int steps = ws.dist[c] - ws.dist[from[c]];
+            for (int j = 0; j < steps; j++) {
+                cells[i--] = c;
+                c = neighbor(c, back);
+            }
+        }
+        cells[0] = c;
+    }
+
+    /**
+     * Returns the flat index of the neighbour of {c} in direction {k} (0:+x, 1:-x, 2:+y, 3:-y),
+     * wrapping around the borders when this map is cyclic.
+     *
+     * @param c flat index
+     * @param k direction
+     * @return the neighbour's flat index, or -1 if it lies outside a non-cyclic map
+     */
+    int neighbor(int c, int k) {
+        int w = this._w;
+        int h = this._h;
+        int cx = c / h;
+        int cy = c - cx * h;
+        boolean cyclic = isCyclic();
+        switch (k) {
+            case 0: return (cx + 1 < w) ? c + h : (cyclic ? cy : -1);
+            case 1: return (cx > 0) ? c - h : (cyclic ? w * h - h + cy : -1);
+            case 2: return (cy + 1 < h) ? c + 1 : (cyclic ? c - cy : -1);
+            default: return (cy > 0) ? c - 1 : (cyclic ? c + h - 1 : -1);
+        }
+    }
 
-        this._map[x][y] = new_v;
-        int count = 1;
+    /**
+     * Converts a pixel into a flat index, wrapping it into the map when cyclic.
+     *
+     * @param p pixel (not null)
+     * @return flat index of {p}
+     * @throws RuntimeException if this map is not cyclic and {p} is outside of it
+     */
+    private int toIndex(Pixel2D p) {
+        int x = p.getX();
+        int y = p.getY();
+        if (!isCyclic()) {
+            if (!isInside(p)) {
+                throw new RuntimeException("out of bounds");
+            }
+        } else {
+            x = wrap(x, _w);
+            y = wrap(y, _h);
+        }
+        return index(x, y);
+    }
 
-        count += fillDfs(x + 1, y, oldColor, new_v);
-        count += fillDfs(x - 1, y, oldColor, new_v);
-        count += fillDfs(x, y + 1, oldColor, new_v);
-        count += fillDfs(x, y - 1, oldColor, new_v);
+    /**
+     * Iteratively fills the connected component of (x, y) using a scanline (span) fill.
+     *
+     * Since the flat buffer stores each column contiguously, spans are taken along the y axis:
+     * - pop a seed and extend it up and down while the pixels still have oldColor
+     * - paint the whole span with new_v in one pass
+     * - scan the same rows in the two neighbouring columns and push one seed per run of oldColor
+     *
+     * Seeds are kept on an explicit int stack of flat indices, so the work is linear in the
+     * size of the component and no recursion (thread stack) is involved. When the map is cyclic
+     * spans and neighbouring columns wrap around the borders; a span never exceeds h pixels.
+     *
+     * @param x the x-coordinate of the starting pixel (inside the map)
+     * @param y the y-coordinate of the starting pixel (inside the map)
+     * @param oldColor the original color of the connected component
+     * @param new_v the new color to apply
+     * @return the number of filled pixels
+     */
+    private int fillScanline(int x, int y, int oldColor, int new_v) {
+        int w = this._w;
+        int h = this._h;
+        int[] map = this._map;
+        boolean cyclic = isCyclic();
+
+        int[] stack = new int[64];
+        int sp = 0;
+        stack[sp++] = index(x, y);
+        int count = 0;
+
+        while (sp > 0) {
+            int c = stack[--sp];
+            if (map[c] != oldColor) continue;
+
+            int cx = c / h;
+            int cy = c - cx * h;
+            int base = cx * h;
+
+            // extend the span downwards (y-1) and upwards (y+1)
+            int lo = cy, hi = cy, len = 1;
+            while (len < h) {
+                int ny = lo - 1;
+                if (ny < 0) {
+                    if (!cyclic) break;
+                    ny = h - 1;
+                }
+                if (map[base + ny] != oldColor) break;
+                lo = ny;
+                len++;
+            }
+            while (len < h) {
+                int ny = hi + 1;
+                if (ny >= h) {
+                    if (!cyclic) break;
+                    ny = 0;
+                }
+                if (map[base + ny] != oldColor) break;
+                hi = ny;
+                len++;
+            }
 
+            // paint the span [lo, lo+len) (mod h)
+            if (_snapshot != null) beforeWrite(cx);
+            if (_dirty != null) markDirtySpan(cx, lo, len);
+            for (int i = 0, yy = lo; i < len; i++) {
+                map[base + yy] = new_v;
+                if (++yy == h) yy = 0;
+            }
+            count += len;
+
+            // seed the neighbouring columns
+            for (int side = -1; side <= 1; side += 2) {
+                int nx = cx + side;
+                if (nx < 0 || nx >= w) {
+                    if (!cyclic) continue;
+                    nx = (nx < 0) ? w - 1 : 0;
+                }
+                if (nx == cx) continue;
+                int nbase = nx * h;
+                boolean inRun = false;
+                for (int i = 0, yy = lo; i < len; i++) {
+                    if (map[nbase + yy] == oldColor) {
+                        if (!inRun) {
+                            if (sp == stack.length) stack = java.util.Arrays.copyOf(stack, sp * 2);
+                            stack[sp++] = nbase + yy;
+                            inRun = true;
+                        }
+                    } else {
+                        inRun = false;
+                    }
+                    if (++yy == h) yy = 0;
+                }
+            }
+        }
         return count;
     }
 
@@ -559,4 +1895,50 @@ private boolean _cyclicFlag = false;
      }
 
 
+
+    /**
+     * The read-only view returned by {@link #view()}, reading the live storage.
+     */
+    private final class LiveView implements MapView {
+        @Override
+        public int getWidth() {
+            return _w;
+        }
+
+        @Override
+        public int getHeight() {
+            return _h;
+        }
+
+        @Override
+        public boolean isCyclic() {
+            return _cyclicFlag;
+        }
+
+        @Override
+        public long getVersion() {
+            return _version;
+        }
+
+        @Override
+        public int getPixel(int x, int y) {
+            return Map.this.getPixel(x, y);
+        }
+
+        @Override
+        public int get(int idx) {
+            if (idx < 0 || idx >= _w * _h) {
+                throw new RuntimeException("Index out of bounds: " + idx);
+            }
+            return _map[idx];
+        }
+
+        @Override
+        public IntBuffer getColumn(int x) {
+            if (x < 0 || x >= _w) {
+                throw new RuntimeException("Column out of bounds: " + x);
+            }
+            return IntBuffer.wrap(_map, x * _h, _h).slice().asReadOnlyBuffer();
+        }
+    }
 }
@@ -0,0 +1,346 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@link Map2D} contract, run against every implementation: {@link Map} (the reference),
+ * {@link MappedMap}, {@link OffHeapMap} and {@link TiledMap}.
+ *
+ * Besides a few fixed cases, every implementation is compared with a {@link Map} holding the
+ * same pixels: init, get/set, fill, shortestPath and allDistance, on cyclic and bounded maps,
+ * and finally on random sequences of operations.
+ */
+class Map2DContractTest {
+    private static final int OBS = 1;
+
+    /** Creates an empty implementation under test, w*h pixels of value v. */
+    interface Factory {
+        Map2D create(int w, int h, int v);
+    }
+
+    @TempDir
+    static Path dir;
+    private static int files = 0;
+    /** Off-heap and mapped maps of the current test, closed after it. */
+    private static final ArrayList<AutoCloseable> OPEN = new ArrayList<>();
+
+    static Stream<Named<Factory>> maps() {
+        return Stream.of(
+                Named.of("Map", (Factory) Map::new),
+                Named.of("MappedMap", (Factory) (w, h, v) -> {
+                    MappedMap m = MappedMap.create(dir.resolve("map" + (files++) + ".map"), w, h, 2);
+                    OPEN.add(m);
+                    if (v != 0) m.init(w, h, v);
+                    return m;
+                }),
+                Named.of("OffHeapMap", (Factory) (w, h, v) -> {
+                    OffHeapMap m = new OffHeapMap(w, h, v);
+                    OPEN.add(m);
+                    return m;
+                }),
+                Named.of("TiledMap", (Factory) TiledMap::new));
+    }
+
+    @AfterEach
+    void closeMaps() throws Exception {
+        for (AutoCloseable m : OPEN) m.close();
+        OPEN.clear();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void initSetsSizeAndValue(Factory f) {
+        Map2D m = f.create(7, 5, 3);
+        assertEquals(7, m.getWidth());
+        assertEquals(5, m.getHeight());
+        assertTrue(Arrays.deepEquals(filled(7, 5, 3), m.getMap()));
+
+        m.init(4, 6, 2);
+        assertEquals(4, m.getWidth());
+        assertEquals(6, m.getHeight());
+        assertTrue(Arrays.deepEquals(filled(4, 6, 2), m.getMap()));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void initCopiesTheArray(Factory f) {
+        int[][] arr = randomArray(new Random(1), 9, 13, 0.3);
+        Map2D m = f.create(1, 1, 0);
+        m.init(arr);
+        assertEquals(9, m.getWidth());
+        assertEquals(13, m.getHeight());
+        assertTrue(Arrays.deepEquals(arr, m.getMap()));
+
+        // neither the source array nor a copy from getMap() is shared with the map
+        arr[0][0] = 7;
+        m.getMap()[1][1] = 7;
+        assertNotEquals(7, m.getPixel(0, 0));
+        assertNotEquals(7, m.getPixel(1, 1));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void initRejectsInvalidInput(Factory f) {
+        Map2D m = f.create(3, 3, 0);
+        assertThrows(RuntimeException.class, () -> m.init(null));
+        assertThrows(RuntimeException.class, () -> m.init(new int[0][]));
+        assertThrows(RuntimeException.class, () -> m.init(new int[][]{{1, 2}, {3}}));
+        assertThrows(RuntimeException.class, () -> m.init(0, 3, 0));
+        assertThrows(RuntimeException.class, () -> m.init(3, -1, 0));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void getAndSetPixels(Factory f) {
+        Map2D m = f.create(6, 4, 0);
+        m.setPixel(2, 3, 9);
+        m.setPixel(new Index2D(5, 0), 4);
+        assertEquals(9, m.getPixel(2, 3));
+        assertEquals(9, m.getPixel(new Index2D(2, 3)));
+        assertEquals(4, m.getPixel(5, 0));
+        assertEquals(0, m.getPixel(0, 0));
+
+        assertTrue(m.isInside(new Index2D(5, 3)));
+        assertFalse(m.isInside(new Index2D(6, 0)));
+        assertFalse(m.isInside(new Index2D(0, -1)));
+        for (boolean cyclic : new boolean[]{false, true}) {
+            m.setCyclic(cyclic);
+            assertEquals(cyclic, m.isCyclic());
+            assertThrows(RuntimeException.class, () -> m.getPixel(-1, 0));
+            assertThrows(RuntimeException.class, () -> m.getPixel(0, 4));
+            assertThrows(RuntimeException.class, () -> m.setPixel(6, 0, 1));
+            assertThrows(RuntimeException.class, () -> m.getPixel(null));
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void fillMatchesMap(Factory f) {
+        Random rnd = new Random(2);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            int[][] arr = randomArray(rnd, 40, 30, 0.35);
+            Map ref = new Map(arr);
+            Map2D m = copy(f, arr);
+            ref.setCyclic(cyclic);
+            m.setCyclic(cyclic);
+            for (int i = 0; i < 20; i++) {
+                Index2D p = new Index2D(rnd.nextInt(40), rnd.nextInt(30));
+                int v = rnd.nextInt(4);
+                assertEquals(ref.fill(p, v), m.fill(p, v));
+                assertTrue(Arrays.deepEquals(ref.getMap(), m.getMap()));
+            }
+        }
+        assertEquals(0, copy(f, filled(3, 3, 2)).fill(new Index2D(1, 1), 2));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void shortestPathIsAShortestValidPath(Factory f) {
+        Random rnd = new Random(3);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            int[][] arr = randomArray(rnd, 40, 30, 0.3);
+            Map ref = new Map(arr);
+            Map2D m = copy(f, arr);
+            ref.setCyclic(cyclic);
+            m.setCyclic(cyclic);
+            for (int i = 0; i < 50; i++) {
+                Index2D p1 = new Index2D(rnd.nextInt(40), rnd.nextInt(30));
+                Index2D p2 = new Index2D(rnd.nextInt(40), rnd.nextInt(30));
+                Pixel2D[] expected = ref.shortestPath(p1, p2, OBS);
+                Pixel2D[] path = m.shortestPath(p1, p2, OBS);
+                if (expected == null) {
+                    assertNull(path);
+                    continue;
+                }
+                assertNotNull(path);
+                assertEquals(expected.length, path.length);
+                assertValidPath(m, p1, p2, path);
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void shortestPathToAnObstacleIsNull(Factory f) {
+        Map2D m = f.create(5, 5, 0);
+        m.setPixel(3, 3, OBS);
+        assertNull(m.shortestPath(new Index2D(0, 0), new Index2D(3, 3), OBS));
+        assertNull(m.shortestPath(new Index2D(3, 3), new Index2D(0, 0), OBS));
+        assertEquals(1, m.shortestPath(new Index2D(2, 2), new Index2D(2, 2), OBS).length);
+        assertThrows(RuntimeException.class, () -> m.shortestPath(null, new Index2D(0, 0), OBS));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void allDistanceMatchesMap(Factory f) {
+        Random rnd = new Random(4);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            int[][] arr = randomArray(rnd, 40, 30, 0.3);
+            Map ref = new Map(arr);
+            Map2D m = copy(f, arr);
+            ref.setCyclic(cyclic);
+            m.setCyclic(cyclic);
+            for (int i = 0; i < 10; i++) {
+                Index2D start = new Index2D(rnd.nextInt(40), rnd.nextInt(30));
+                Map2D expected = ref.allDistance(start, OBS);
+                Map2D dist = m.allDistance(start, OBS);
+                assertTrue(Arrays.deepEquals(expected.getMap(), dist.getMap()));
+                assertEquals(cyclic, dist.isCyclic());
+            }
+        }
+        Map2D m = f.create(4, 4, 0);
+        m.setPixel(1, 1, OBS);
+        assertTrue(Arrays.deepEquals(filled(4, 4, -1), m.allDistance(new Index2D(1, 1), OBS).getMap()));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void cyclicMapWrapsAround(Factory f) {
+        Map2D m = f.create(5, 4, 0);
+        m.setCyclic(true);
+        assertEquals(2, m.shortestPath(new Index2D(0, 0), new Index2D(4, 0), OBS).length);
+        assertEquals(2, m.shortestPath(new Index2D(0, 0), new Index2D(0, 3), OBS).length);
+        Map2D dist = m.allDistance(new Index2D(-1, 0), OBS);
+        assertEquals(0, dist.getPixel(4, 0));
+        assertEquals(1, dist.getPixel(0, 0));
+        assertEquals(2, dist.getPixel(4, 2));
+        assertEquals(20, m.fill(new Index2D(6, 1), 3));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void boundedMapDoesNotWrap(Factory f) {
+        Map2D m = f.create(5, 4, 0);
+        m.setCyclic(false);
+        assertEquals(5, m.shortestPath(new Index2D(0, 0), new Index2D(4, 0), OBS).length);
+        assertEquals(4, m.allDistance(new Index2D(0, 0), OBS).getPixel(4, 0));
+        assertThrows(RuntimeException.class, () -> m.allDistance(new Index2D(-1, 0), OBS));
+        assertThrows(RuntimeException.class, () -> m.shortestPath(new Index2D(0, 0), new Index2D(5, 0), OBS));
+        assertThrows(RuntimeException.class, () -> m.fill(new Index2D(0, 4), 3));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void randomOperationsMatchMap(Factory f) {
+        Random rnd = new Random(5);
+        for (int it = 0; it < 40; it++) {
+            int w = 1 + rnd.nextInt(60);
+            int h = 1 + rnd.nextInt(60);
+            boolean cyclic = rnd.nextBoolean();
+            int[][] arr = randomArray(rnd, w, h, rnd.nextDouble() * 0.5);
+            Map ref = new Map(w, h, 0);
+            Map2D m = f.create(w, h, 0);
+            ref.setCyclic(cyclic);
+            m.setCyclic(cyclic);
+            if (rnd.nextBoolean()) {
+                ref.init(arr);
+                m.init(arr);
+            } else {
+                for (int x = 0; x < w; x++) {
+                    for (int y = 0; y < h; y++) {
+                        ref.setPixel(x, y, arr[x][y]);
+                        m.setPixel(x, y, arr[x][y]);
+                    }
+                }
+            }
+            for (int op = 0; op < 30; op++) {
+                int kind = rnd.nextInt(5);
+                // p may be outside the map, q is inside
+                Index2D p = new Index2D(rnd.nextInt(w + 4) - 2, rnd.nextInt(h + 4) - 2);
+                Index2D q = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                int v = rnd.nextInt(3);
+                String what = "op " + kind + " at " + p + " on " + w + "x" + h + (cyclic ? " cyclic" : "");
+                assertEquals(apply(ref, kind, p, q, v), apply(m, kind, p, q, v), what);
+                assertTrue(Arrays.deepEquals(ref.getMap(), m.getMap()), what);
+            }
+        }
+    }
+
+    /**
+     * Runs one operation, and describes its result (or "throws") for the comparison.
+     */
+    private static String apply(Map2D m, int kind, Index2D p, Index2D q, int v) {
+        try {
+            switch (kind) {
+                case 0: {
+                    // Map.fill wraps a start pixel of a cyclic map by one step only
+                    int x = Math.max(-1, Math.min(p.getX(), m.getWidth()));
+                    int y = Math.max(-1, Math.min(p.getY(), m.getHeight()));
+                    return "fill " + m.fill(new Index2D(x, y), v);
+                }
+                case 1: {
+                    Pixel2D[] path = m.shortestPath(p, q, OBS);
+                    return (path == null) ? "no path" : "path " + path.length;
+                }
+                case 2: {
+                    Map2D dist = m.allDistance(p, OBS);
+                    return Arrays.deepToString(dist.getMap()) + dist.isCyclic();
+                }
+                case 3:
+                    m.setPixel(p, v);
+                    return "set";
+                default:
+                    return "get " + m.getPixel(p);
+            }
+        } catch (RuntimeException e) {
+            return "throws";
+        }
+    }
+
+    /**
+     * Checks that {path} goes from {p1} to {p2} by single steps (wrapping on a cyclic map)
+     * through pixels that are not obstacles.
+     */
+    private static void assertValidPath(Map2D m, Pixel2D p1, Pixel2D p2, Pixel2D[] path) {
+        int w = m.getWidth();
+        int h = m.getHeight();
+        assertEquals(p1.getX(), path[0].getX());
+        assertEquals(p1.getY(), path[0].getY());
+        assertEquals(p2.getX(), path[path.length - 1].getX());
+        assertEquals(p2.getY(), path[path.length - 1].getY());
+        for (int i = 0; i < path.length; i++) {
+            assertNotEquals(OBS, m.getPixel(path[i]));
+            if (i == 0) continue;
+            int dx = Math.abs(path[i].getX() - path[i - 1].getX());
+            int dy = Math.abs(path[i].getY() - path[i - 1].getY());
+            if (m.isCyclic()) {
+                dx = Math.min(dx, w - dx);
+                dy = Math.min(dy, h - dy);
+            }
+            assertEquals(1, dx + dy, "not a single step at " + i);
+        }
+    }
+
+    private static Map2D copy(Factory f, int[][] arr) {
+        Map2D m = f.create(1, 1, 0);
+        m.init(arr);
+        return m;
+    }
+
+    /** @return a w*h array of obstacles (density {obs}), a few 2s, and 0s. */
+    private static int[][] randomArray(Random rnd, int w, int h, double obs) {
+        int[][] arr = new int[w][h];
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                arr[x][y] = (rnd.nextDouble() < obs) ? OBS : (rnd.nextInt(10) == 0 ? 2 : 0);
+            }
+        }
+        return arr;
+    }
+
+    private static int[][] filled(int w, int h, int v) {
+        int[][] arr = new int[w][h];
+        for (int[] column : arr) Arrays.fill(column, v);
+        return arr;
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Random;
+
+/**
+ * A small stand-alone benchmark for the path engines of {@link Map}.
+ *
+ * For every map size and obstacle density it builds a random (cyclic) map, picks random
+ * passable point pairs, and reports the average time per shortestPath query of each
+ * {@link Map.PathEngine} (BFS is the default, pre-existing implementation).
+ * Every engine answers the same queries with the same workspace, and the path lengths are
+ * cross-checked against BFS.
+ *
+ * Usage: java MapBenchmark [queries per case]
+ */
+public class MapBenchmark {
+    private static final int[] SIZES = {64, 256, 1024};
+    private static final double[] DENSITIES = {0.0, 0.1, 0.2, 0.3};
+    private static final int OBS = 1;
+    /** Landmarks of the {@link Map.PathEngine#ALT} engine. */
+    private static final int LANDMARKS = 8;
+
+    public static void main(String[] args) {
+        int queries = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        Random rnd = new Random(1);
+        BfsWorkspace ws = new BfsWorkspace();
+
+        System.out.printf("%6s %8s", "size", "density");
+        for (Map.PathEngine engine : Map.PathEngine.values()) {
+            System.out.printf(" %14s", engine + " us");
+        }
+        System.out.println();
+        for (int size : SIZES) {
+            for (double density : DENSITIES) {
+                Map map = randomMap(size, density, rnd);
+                int[] pairs = randomPairs(map, queries, rnd);
+                map.setLandmarks(LandmarkOracle.build(map, OBS, LANDMARKS));
+
+                Map.PathEngine[] engines = Map.PathEngine.values();
+                long[] lengths = new long[engines.length];
+                double[] micros = new double[engines.length];
+                for (int e = 0; e < engines.length; e++) {
+                    map.setPathEngine(engines[e]);
+                    run(map, pairs, ws); // warm up
+                    long start = System.nanoTime();
+                    lengths[e] = run(map, pairs, ws);
+                    micros[e] = (System.nanoTime() - start) / 1000.0 / queries;
+                }
+                for (int e = 1; e < engines.length; e++) {
+                    if (lengths[e] != lengths[0]) {
+                        throw new RuntimeException(engines[e] + " disagrees with BFS on " + size + "/" + density);
+                    }
+                }
+                System.out.printf("%6d %8.2f", size, density);
+                for (double us : micros) {
+                    System.out.printf(" %14.1f", us);
+                }
+                System.out.println();
+            }
+        }
+    }
+
+    /**
+     * Runs all the queries and returns the sum of the path lengths (-1 for no path).
+     */
+    private static long run(Map map, int[] pairs, BfsWorkspace ws) {
+        long sum = 0;
+        for (int i = 0; i < pairs.length; i += 4) {
+            Pixel2D[] path = map.shortestPath(new Index2D(pairs[i], pairs[i + 1]),
+                    new Index2D(pairs[i + 2], pairs[i + 3]), OBS, ws);
+            sum += (path == null) ? -1 : path.length;
+        }
+        return sum;
+    }
+
+    static Map randomMap(int size, double density, Random rnd) {
+        Map map = new Map(size, size, 0);
+        map.setCyclic(true);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (rnd.nextDouble() < density) map.setPixel(x, y, OBS);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return {n} random pairs of passable pixels, as x1,y1,x2,y2 quadruples.
+     */
+    private static int[] randomPairs(Map map, int n, Random rnd) {
+        int[] pairs = new int[n * 4];
+        for (int i = 0; i < pairs.length; i += 2) {
+            int x, y;
+            do {
+                x = rnd.nextInt(map.getWidth());
+                y = rnd.nextInt(map.getHeight());
+            } while (map.getPixel(x, y) == OBS);
+            pairs[i] = x;
+            pairs[i + 1] = y;
+        }
+        return pairs;
+    }
+}
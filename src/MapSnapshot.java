@@ -0,0 +1,155 @@
+import java.nio.IntBuffer;
+
+/**
+ * An immutable version of a {@link Map}, taken with {@link Map#snapshot()}, that can be kept
+ * (e.g. across game ticks) while the map goes on changing.
+ *
+ * Taking a snapshot copies nothing. It keeps reading the live map, and the map copies a
+ * column into its newest snapshot right before the first write to that column. A snapshot
+ * therefore costs one column copy per modified column.
+ *
+ * When several snapshots are alive, only the newest one receives copies. An older snapshot
+ * reads a column it did not copy from the next (newer) snapshot. No write happened to that
+ * column between the two snapshots, so both hold the same pixels. Copied columns are never
+ * written again, so snapshots share them.
+ *
+ * Like {@link Map}, a snapshot is not thread safe: it must not be read while its map is written
+ * from another thread.
+ */
+public final class MapSnapshot implements MapView {
+    private final int _w, _h;
+    private final boolean _cyclic;
+    private final long _version;
+    /** Pixels of the copied (or borrowed) columns, null for the ones still read from the map. */
+    private final int[][] _columns;
+    private int _copied = 0;
+    /** The map, for the columns not copied yet. */
+    private final Map _map;
+    /** The next snapshot of the map, null while this one is the newest. */
+    private MapSnapshot _next = null;
+
+    MapSnapshot(Map map, int w, int h, boolean cyclic, long version) {
+        this._map = map;
+        this._w = w;
+        this._h = h;
+        this._cyclic = cyclic;
+        this._version = version;
+        this._columns = new int[w][];
+    }
+
+    @Override
+    public int getWidth() {
+        return _w;
+    }
+
+    @Override
+    public int getHeight() {
+        return _h;
+    }
+
+    @Override
+    public boolean isCyclic() {
+        return _cyclic;
+    }
+
+    @Override
+    public long getVersion() {
+        return _version;
+    }
+
+    @Override
+    public int getPixel(int x, int y) {
+        if (x < 0 || y < 0 || x >= _w || y >= _h) {
+            throw new RuntimeException("Pixel out of bounds: (" + x + "," + y + ")");
+        }
+        int[] column = column(x);
+        return (column != null) ? column[y] : _map.get(x * _h + y);
+    }
+
+    @Override
+    public int get(int idx) {
+        if (idx < 0 || idx >= _w * _h) {
+            throw new RuntimeException("Index out of bounds: " + idx);
+        }
+        int x = idx / _h;
+        int[] column = column(x);
+        return (column != null) ? column[idx - x * _h] : _map.get(idx);
+    }
+
+    /**
+     * Returns the column x as a read-only buffer. The buffer must stay valid after the map
+     * changes, so a column that is still read from the map is copied first (once).
+     */
+    @Override
+    public IntBuffer getColumn(int x) {
+        if (x < 0 || x >= _w) {
+            throw new RuntimeException("Column out of bounds: " + x);
+        }
+        int[] column = column(x);
+        if (column == null) {
+            copy(x, _map.rawPixels());
+            column = _columns[x];
+        }
+        return IntBuffer.wrap(column).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a new map holding a copy of this snapshot
+     */
+    public Map toMap() {
+        Map result = new Map(_w, _h, 0);
+        result.setCyclic(_cyclic);
+        for (int i = 0, n = _w * _h; i < n; i++) {
+            int v = get(i);
+            if (v != 0) result.set(i, v);
+        }
+        return result;
+    }
+
+    /**
+     * @return the pixels of column x if this snapshot (or a newer one) has them, or null when
+     * the column of the map has not changed since this snapshot was taken
+     */
+    private int[] column(int x) {
+        int[] column = _columns[x];
+        if (column == null && _next != null) {
+            column = _next.column(x);
+            if (column != null) _columns[x] = column; // borrowed, saves the walk next time
+        }
+        return column;
+    }
+
+    /**
+     * Copies the column x of the map's flat pixels {pixels}, unless this snapshot already has it.
+     * Called by the map right before the column is written.
+     */
+    void copy(int x, int[] pixels) {
+        if (_columns[x] != null) return;
+        int[] column = new int[_h];
+        System.arraycopy(pixels, x * _h, column, 0, _h);
+        _columns[x] = column;
+        _copied++;
+    }
+
+    /**
+     * Copies every column this snapshot does not have yet (before the map is re-initialized).
+     */
+    void copyAll(int[] pixels) {
+        for (int x = 0; x < _w; x++) {
+            copy(x, pixels);
+        }
+    }
+
+    /** @return true iff every column has been copied, so the map no longer needs this snapshot. */
+    boolean isComplete() {
+        return _copied == _w;
+    }
+
+    /**
+     * Links the snapshot taken after this one: from now on, the columns this one lacks are read
+     * from {next}.
+     */
+    void setNext(MapSnapshot next) {
+        _next = next;
+    }
+}
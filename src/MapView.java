@@ -0,0 +1,50 @@
+import java.nio.IntBuffer;
+
+/**
+ * Read-only access to the pixels of a {@link Map}, without copying them (unlike
+ * {@link Map2D#getMap()}, which deep-copies the whole raster on every call).
+ *
+ * Two implementations exist:
+ * - {@link Map#view()}: a live view, every read sees the current content of the map.
+ * - {@link Map#snapshot()}: an immutable {@link MapSnapshot} of the map at the time it was taken.
+ *
+ * Pixels are addressed by (x,y) or by the flat index x*getHeight()+y, and a whole column is
+ * available as a read-only {@link IntBuffer} wrapping the stored pixels.
+ */
+public interface MapView {
+
+    /** @return the width of the map (first coordinate). */
+    int getWidth();
+
+    /** @return the height of the map (second coordinate). */
+    int getHeight();
+
+    /** @return true iff the map was cyclic. */
+    boolean isCyclic();
+
+    /** @return the {@link Map#getVersion()} of the map this view shows. */
+    long getVersion();
+
+    /**
+     * @return the value of the pixel (x,y)
+     * @throws RuntimeException if (x,y) is outside the map
+     */
+    int getPixel(int x, int y);
+
+    /**
+     * @param idx flat index x*getHeight()+y
+     * @return the value of the pixel
+     * @throws RuntimeException if {idx} is outside the map
+     */
+    int get(int idx);
+
+    /**
+     * Returns the column x (the pixels (x,0) .. (x,h-1)) as a read-only buffer of getHeight()
+     * ints. The pixels are not copied.
+     *
+     * @param x the column
+     * @return a read-only buffer positioned at (x,0)
+     * @throws RuntimeException if {x} is outside the map
+     */
+    IntBuffer getColumn(int x);
+}
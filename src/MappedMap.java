@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A {@link Map2D} stored in a binary map file and accessed through a memory mapping
+ * ({@link FileChannel#map}): pixels are read and written directly in the mapped file, so opening
+ * a map costs no copy and maps larger than the heap can be used.
+ *
+ * File format (big-endian):
+ * <pre>
+ * offset  size  field
+ *  0      4     magic number 0x4D415032 ("MAP2")
+ *  4      4     format version (1)
+ *  8      4     width
+ * 12      4     height
+ * 16      1     cyclic flag (0/1)
+ * 17      1     cell width in bytes: 1, 2 or 4 (signed byte / short / int pixels)
+ * 18      14    reserved (0)
+ * 32      ...   the pixels, column by column: pixel (x,y) is cell number x*height+y
+ * </pre>
+ * Files larger than 1GB are mapped in several chunks.
+ * Writes go to the file (through the OS page cache); call {@link #force()} to flush them and
+ * {@link #close()} when done. The mapping itself is released when the map is garbage collected.
+ * A map opened with {@link #open(Path, boolean)} read-only maps the file READ_ONLY, so files
+ * without write permission (or on a read-only mount) can be read; every write then throws.
+ */
+public class MappedMap extends AbstractMap2D implements AutoCloseable {
+    /** First 4 bytes of a map file, "MAP2". */
+    public static final int MAGIC = 0x4D415032;
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 32;
+    private static final int CYCLIC_OFFSET = 16;
+    private static final int CELL_WIDTH_OFFSET = 17;
+
+    private final Path _file;
+    private final int _cellWidth;
+    private final boolean _readOnly;
+    private RandomAccessFile _raf;
+    private MappedByteBuffer[] _chunks;
+    private PixelBuffer _pixels;
+    private int _w, _h;
+
+    private MappedMap(Path file, int cellWidth, boolean readOnly) {
+        this._file = file;
+        this._cellWidth = cellWidth;
+        this._readOnly = readOnly;
+    }
+
+    /**
+     * Creates (or overwrites) a map file of w*h pixels, all of them 0.
+     *
+     * @param file the map file
+     * @param w width
+     * @param h height
+     * @param cellWidth bytes per pixel: 1, 2 or 4
+     * @return the new map, mapped read-write
+     * @throws RuntimeException for invalid sizes or an I/O error
+     */
+    public static MappedMap create(Path file, int w, int h, int cellWidth) {
+        if (file == null) throw new RuntimeException("file is null");
+        PixelBuffer.checkCellWidth(cellWidth);
+        MappedMap map = new MappedMap(file, cellWidth, false);
+        map.init(w, h, 0);
+        return map;
+    }
+
+    /**
+     * Creates (or overwrites) a map file holding a copy of {map} (pixels and cyclic flag).
+     *
+     * @param file the map file
+     * @param map the map to copy
+     * @param cellWidth bytes per pixel: 1, 2 or 4 (every pixel of {map} must fit)
+     * @return the new map, mapped read-write
+     */
+    public static MappedMap create(Path file, Map2D map, int cellWidth) {
+        if (map == null) throw new RuntimeException("map is null");
+        MappedMap ans = create(file, map.getWidth(), map.getHeight(), cellWidth);
+        for (int x = 0; x < ans._w; x++) {
+            for (int y = 0; y < ans._h; y++) {
+                int v = map.getPixel(x, y);
+                if (v != 0) ans.write(x, y, v);
+            }
+        }
+        ans.setCyclic(map.isCyclic());
+        return ans;
+    }
+
+    /**
+     * Opens an existing map file, read-write. Nothing is copied: the pixels are read on demand.
+     *
+     * @param file the map file
+     * @return the mapped map
+     * @throws RuntimeException if the file is not a valid map file, or on an I/O error
+     */
+    public static MappedMap open(Path file) {
+        return open(file, false);
+    }
+
+    /**
+     * Opens an existing map file. Nothing is copied: the pixels are read on demand.
+     * A read-only map only needs read access to the file; {@link #setPixel}, {@link #fill},
+     * {@link #init} and {@link #setCyclic} throw on it.
+     *
+     * @param file the map file
+     * @param readOnly true to map the file read-only
+     * @return the mapped map
+     * @throws RuntimeException if the file is not a valid map file, or on an I/O error
+     */
+    public static MappedMap open(Path file, boolean readOnly) {
+        if (file == null) throw new RuntimeException("file is null");
+        try {
+            if (Files.size(file) < HEADER_BYTES) {
+                throw new RuntimeException("Not a map file: " + file);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            try (FileChannel ch = FileChannel.open(file)) {
+                while (header.hasRemaining() && ch.read(header) >= 0) { }
+            }
+            if (header.getInt(0) != MAGIC) {
+                throw new RuntimeException("Not a map file: " + file);
+            }
+            if (header.getInt(4) != FORMAT_VERSION) {
+                throw new RuntimeException("Unsupported map file version: " + header.getInt(4));
+            }
+            int w = header.getInt(8);
+            int h = header.getInt(12);
+            int cellWidth = header.get(CELL_WIDTH_OFFSET);
+            PixelBuffer.checkCellWidth(cellWidth);
+            if (w <= 0 || h <= 0 || Files.size(file) != size(w, h, cellWidth)) {
+                throw new RuntimeException("Corrupted map file: " + file);
+            }
+            checkSize(w, h);
+            MappedMap map = new MappedMap(file, cellWidth, readOnly);
+            map.map(w, h, false);
+            map.setCyclicFlag(header.get(CYCLIC_OFFSET) != 0);
+            return map;
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open map file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Resizes the file to w*h pixels of value {v}; the previous content is discarded.
+     * The cell width and the cyclic flag are kept.
+     */
+    @Override
+    public void init(int w, int h, int v) {
+        checkWritable();
+        checkSize(w, h);
+        try {
+            map(w, h, true);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create map file " + _file + ": " + e.getMessage(), e);
+        }
+        ByteBuffer header = _chunks[0];
+        header.putInt(0, MAGIC);
+        header.putInt(4, FORMAT_VERSION);
+        header.putInt(8, w);
+        header.putInt(12, h);
+        header.put(CYCLIC_OFFSET, (byte) (isCyclic() ? 1 : 0));
+        header.put(CELL_WIDTH_OFFSET, (byte) _cellWidth);
+        if (v != 0) _pixels.fill(0, (long) w * h, v);
+    }
+
+    @Override
+    public int getWidth() {
+        return _w;
+    }
+
+    @Override
+    public int getHeight() {
+        return _h;
+    }
+
+    /** @return the number of bytes per pixel in the file. */
+    public int getCellWidth() {
+        return _cellWidth;
+    }
+
+    /** @return true iff the file is mapped read-only. */
+    public boolean isReadOnly() {
+        return _readOnly;
+    }
+
+    /** @return the map file. */
+    public Path getFile() {
+        return _file;
+    }
+
+    /**
+     * Sets the cyclic flag, and stores it in the file header.
+     */
+    @Override
+    public void setCyclic(boolean cy) {
+        checkOpen();
+        checkWritable();
+        setCyclicFlag(cy);
+        _chunks[0].put(CYCLIC_OFFSET, (byte) (cy ? 1 : 0));
+    }
+
+    /**
+     * Flushes the changes to the storage device (nothing to do for a read-only map).
+     */
+    public void force() {
+        checkOpen();
+        if (_readOnly) return;
+        for (MappedByteBuffer chunk : _chunks) {
+            chunk.force();
+        }
+    }
+
+    /**
+     * Flushes the changes and closes the file; the map cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (_raf == null) return;
+        force();
+        try {
+            _raf.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot close map file " + _file + ": " + e.getMessage(), e);
+        } finally {
+            _raf = null;
+            _chunks = null;
+            _pixels = null;
+        }
+    }
+
+    @Override
+    protected int read(int x, int y) {
+        checkOpen();
+        return _pixels.get((long) x * _h + y);
+    }
+
+    @Override
+    protected void write(int x, int y, int v) {
+        checkOpen();
+        checkWritable();
+        _pixels.set((long) x * _h + y, v);
+    }
+
+    /**
+     * (Re)opens the file and maps it for a w*h map, truncating it first when {create} is true.
+     */
+    private void map(int w, int h, boolean create) throws IOException {
+        if (_raf != null) _raf.close();
+        long size = size(w, h, _cellWidth);
+        _raf = new RandomAccessFile(_file.toFile(), _readOnly ? "r" : "rw");
+        if (create) {
+            _raf.setLength(0);
+            _raf.setLength(size);
+        }
+        FileChannel channel = _raf.getChannel();
+        FileChannel.MapMode mode = _readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        int count = PixelBuffer.chunkCount(size);
+        _chunks = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            _chunks[i] = channel.map(mode, (long) i << PixelBuffer.CHUNK_SHIFT, PixelBuffer.chunkSize(size, i));
+        }
+        _pixels = new PixelBuffer(_chunks, HEADER_BYTES, _cellWidth);
+        _w = w;
+        _h = h;
+    }
+
+    private void setCyclicFlag(boolean cy) {
+        super.setCyclic(cy);
+    }
+
+    private void checkOpen() {
+        if (_raf == null) {
+            throw new RuntimeException("map is closed");
+        }
+    }
+
+    private void checkWritable() {
+        if (_readOnly) {
+            throw new RuntimeException("map file is read-only: " + _file);
+        }
+    }
+
+    private static long size(int w, int h, int cellWidth) {
+        return HEADER_BYTES + (long) w * h * cellWidth;
+    }
+}
@@ -0,0 +1,133 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link Map2D} whose pixels are stored outside of the Java heap, in direct byte buffers
+ * (4 bytes per pixel, native byte order). The heap only holds this object and the buffer
+ * handles, so even a 16k x 16k map costs the garbage collector nothing to scan or copy.
+ *
+ * The direct memory is limited by {@code -XX:MaxDirectMemorySize} (by default the maximal heap
+ * size). Maps larger than 1GB are split into several buffers.
+ * {@link #close()} releases the buffers: the map cannot be used afterwards, and the memory is
+ * returned to the system when the buffers are collected.
+ * Note that the search algorithms (shortestPath, allDistance) still use heap scratch buffers.
+ */
+public class OffHeapMap extends AbstractMap2D implements AutoCloseable {
+    private ByteBuffer[] _chunks;
+    private PixelBuffer _pixels;
+    private int _w, _h;
+
+    /**
+     * Constructs a w*h off-heap map with an init value v.
+     * @param w width
+     * @param h height
+     * @param v init value of all the pixels
+     */
+    public OffHeapMap(int w, int h, int v) {
+        init(w, h, v);
+    }
+
+    /**
+     * Constructs an off-heap copy of the given array, see {@link #init(int[][])}.
+     * @param data the pixels, data[x][y]
+     */
+    public OffHeapMap(int[][] data) {
+        init(data);
+    }
+
+    /**
+     * Allocates new off-heap buffers for w*h pixels of value {v}; the previous buffers are released.
+     */
+    @Override
+    public void init(int w, int h, int v) {
+        checkSize(w, h);
+        long bytes = 4L * w * h;
+        int count = PixelBuffer.chunkCount(bytes);
+        ByteBuffer[] chunks = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            // direct buffers are zeroed on allocation
+            chunks[i] = ByteBuffer.allocateDirect(PixelBuffer.chunkSize(bytes, i)).order(ByteOrder.nativeOrder());
+        }
+        this._chunks = chunks;
+        this._pixels = new PixelBuffer(chunks, 0, 4);
+        this._w = w;
+        this._h = h;
+        if (v != 0) {
+            int[] column = new int[h];
+            java.util.Arrays.fill(column, v);
+            for (int x = 0; x < w; x++) {
+                _pixels.put((long) x * h, column);
+            }
+        }
+    }
+
+    /**
+     * Copies the array into off-heap buffers, one column at a time.
+     * @throws RuntimeException for null, empty, or ragged inputs
+     */
+    @Override
+    public void init(int[][] arr) {
+        int h = checkArray(arr);
+        init(arr.length, h, 0);
+        for (int x = 0; x < arr.length; x++) {
+            _pixels.put((long) x * h, arr[x]);
+        }
+    }
+
+    /**
+     * Copies the pixels into a new (heap) array, one column at a time.
+     */
+    @Override
+    public int[][] getMap() {
+        checkOpen();
+        int[][] ans = new int[_w][_h];
+        for (int x = 0; x < _w; x++) {
+            _pixels.get((long) x * _h, ans[x]);
+        }
+        return ans;
+    }
+
+    @Override
+    public int getWidth() {
+        return _w;
+    }
+
+    @Override
+    public int getHeight() {
+        return _h;
+    }
+
+    /**
+     * @return the number of off-heap bytes held by this map (0 once closed)
+     */
+    public long getOffHeapBytes() {
+        return (_chunks == null) ? 0 : 4L * _w * _h;
+    }
+
+    /**
+     * Releases the off-heap buffers; the map cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        _chunks = null;
+        _pixels = null;
+    }
+
+    @Override
+    protected int read(int x, int y) {
+        checkOpen();
+        return _pixels.get((long) x * _h + y);
+    }
+
+    @Override
+    protected void write(int x, int y, int v) {
+        checkOpen();
+        _pixels.set((long) x * _h + y, v);
+    }
+
+    private void checkOpen() {
+        if (_pixels == null) {
+            throw new RuntimeException("map is closed");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A stand-alone scaling benchmark for {@link Map#allDistanceParallel}.
+ *
+ * It builds one large random (cyclic) map, times the sequential {@link Map#allDistance(Pixel2D, int)}
+ * and then the level-synchronous parallel BFS on fork/join pools of 1..N threads, checks that
+ * every run returns the same distances, and reports the time and the speedup over the sequential
+ * BFS and over the parallel BFS on one thread. The parallel runs call the kernel directly,
+ * because {@link Map#allDistanceParallel} falls back to the sequential BFS on one thread; the one
+ * thread row thus shows the overhead of the parallel algorithm itself.
+ *
+ * Usage: java ParallelBenchmark [size] [max threads]
+ */
+public class ParallelBenchmark {
+    private static final int OBS = 1;
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 4096;
+        int maxThreads = (args.length > 1) ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        Map map = MapBenchmark.randomMap(size, 0.2, new Random(1));
+        Index2D start = new Index2D(size / 2, size / 2);
+        map.setPixel(start, 0);
+
+        Map2D expected = map.allDistance(start, OBS);
+        double seq = time(() -> map.allDistance(start, OBS));
+        System.out.printf("%dx%d, %d cores available%n", size, size, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%10s %10s %8s %8s%n", "threads", "ms", "vs seq", "vs 1");
+        System.out.printf("%10s %10.1f %8.2f %8s%n", "seq", seq, 1.0, "-");
+        double one = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Map2D result = map.allDistanceLevelSync(start, OBS, pool);
+            if (!sameDistances(expected, result)) {
+                throw new RuntimeException("parallel BFS disagrees with BFS on " + threads + " threads");
+            }
+            double ms = time(() -> map.allDistanceLevelSync(start, OBS, pool));
+            pool.shutdown();
+            if (threads == 1) one = ms;
+            System.out.printf("%10d %10.1f %8.2f %8.2f%n", threads, ms, seq / ms, one / ms);
+        }
+    }
+
+    /**
+     * @return the best time, in milliseconds, of {RUNS} runs.
+     */
+    private static double time(Runnable run) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    private static boolean sameDistances(Map2D a, Map2D b) {
+        for (int x = 0; x < a.getWidth(); x++) {
+            for (int y = 0; y < a.getHeight(); y++) {
+                if (a.getPixel(x, y) != b.getPixel(x, y)) return false;
+            }
+        }
+        return true;
+    }
+}
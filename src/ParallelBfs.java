@@ -0,0 +1,155 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Level-synchronous parallel BFS behind {@link Map#allDistanceParallel}.
+ *
+ * Every BFS level is expanded in parallel: the frontier is cut into chunks of {@link #CHUNK}
+ * pixels and each chunk is a fork/join leaf that writes the pixels it discovers into its own
+ * buffer. A pixel is claimed by atomically setting its bit in a shared visited bitmap, so
+ * exactly one leaf writes its distance. The buffers are then concatenated, in chunk order, into
+ * the frontier of the next level; levels small enough to fit a single chunk run in the caller.
+ *
+ * The distances do not depend on which leaf claims a pixel (every claim of a level writes the
+ * same level number), so the result is identical to the sequential BFS.
+ */
+class ParallelBfs {
+    /** Frontier pixels handled by one leaf task. */
+    static final int CHUNK = 4096;
+
+    private final Map _map;
+    private final int _obsColor;
+    private final int[] _dist;
+    private final AtomicLongArray _visited;
+
+    private int[] _frontier;
+    private int[] _next;
+    private int _size;
+    private int _level;
+    /** Output buffer and output size of every chunk of the current level. */
+    private int[][] _buffers = new int[0][];
+    private int[] _counts = new int[0];
+
+    private ParallelBfs(Map map, int obsColor, int[] dist) {
+        this._map = map;
+        this._obsColor = obsColor;
+        this._dist = dist;
+        this._visited = new AtomicLongArray((dist.length + 63) >>> 6);
+        this._frontier = new int[dist.length];
+        this._next = new int[dist.length];
+    }
+
+    /**
+     * Writes the distance from the flat index {s} (not an obstacle) into {dist}, which must hold
+     * -1 for every pixel of {map}.
+     */
+    static void run(Map map, int s, int obsColor, int[] dist, ForkJoinPool pool) {
+        ParallelBfs bfs = new ParallelBfs(map, obsColor, dist);
+        bfs.claim(s);
+        dist[s] = 0;
+        bfs._frontier[0] = s;
+        bfs._size = 1;
+        while (bfs._size > 0) {
+            bfs._level++;
+            int chunks = (bfs._size + CHUNK - 1) / CHUNK;
+            bfs.ensureChunks(chunks);
+            if (chunks == 1) {
+                bfs.expandChunk(0);
+            } else {
+                pool.invoke(bfs.new LevelTask(0, chunks));
+            }
+            bfs.gather(chunks);
+        }
+    }
+
+    private void ensureChunks(int chunks) {
+        if (chunks <= _buffers.length) return;
+        int n = Math.max(chunks, 2 * _buffers.length);
+        int[][] buffers = new int[n][];
+        System.arraycopy(_buffers, 0, buffers, 0, _buffers.length);
+        _buffers = buffers;
+        _counts = new int[n];
+    }
+
+    /**
+     * Expands the frontier pixels of chunk {c} into the chunk's buffer.
+     */
+    private void expandChunk(int c) {
+        int lo = c * CHUNK;
+        int hi = Math.min(lo + CHUNK, _size);
+        int[] out = _buffers[c];
+        if (out == null) {
+            out = new int[4 * CHUNK];
+            _buffers[c] = out;
+        }
+        Map map = _map;
+        int[] dist = _dist;
+        int[] frontier = _frontier;
+        int level = _level;
+        int count = 0;
+        for (int i = lo; i < hi; i++) {
+            int p = frontier[i];
+            for (int k = 0; k < 4; k++) {
+                int n = map.neighbor(p, k);
+                // dist only goes from -1 to its final value, a stale -1 is settled by claim()
+                if (n < 0 || dist[n] != -1 || map.get(n) == _obsColor || !claim(n)) continue;
+                dist[n] = level;
+                out[count++] = n;
+            }
+        }
+        _counts[c] = count;
+    }
+
+    /**
+     * Concatenates the chunk buffers, in chunk order, into the next frontier.
+     */
+    private void gather(int chunks) {
+        int size = 0;
+        for (int c = 0; c < chunks; c++) {
+            System.arraycopy(_buffers[c], 0, _next, size, _counts[c]);
+            size += _counts[c];
+        }
+        int[] t = _frontier;
+        _frontier = _next;
+        _next = t;
+        _size = size;
+    }
+
+    /**
+     * @return true iff this call is the one that marked the pixel {n} as visited
+     */
+    private boolean claim(int n) {
+        int word = n >>> 6;
+        long bit = 1L << n;
+        while (true) {
+            long old = _visited.get(word);
+            if ((old & bit) != 0) return false;
+            if (_visited.compareAndSet(word, old, old | bit)) return true;
+        }
+    }
+
+    /**
+     * Expands the chunks [lo, hi) of the current level, splitting them in halves.
+     */
+    private class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo, hi;
+
+        LevelTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                expandChunk(lo);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new LevelTask(lo, mid), new LevelTask(mid, hi));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Pixel access on top of byte buffers (file mappings or direct memory), for maps larger than a
+ * single buffer: the bytes are split into chunks of {@link #CHUNK_BYTES}, and pixel {i} (a flat
+ * x*h+y index) lives at byte {base + i*cellWidth}. Cells of 1, 2 or 4 bytes hold signed values
+ * (byte, short or int); since the base and the chunk size are multiples of 4, a cell never
+ * crosses two chunks.
+ */
+class PixelBuffer {
+    static final int CHUNK_SHIFT = 30;
+    static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_BYTES - 1;
+
+    private final ByteBuffer[] _chunks;
+    private final long _base;
+    private final int _cellWidth;
+
+    /**
+     * @param chunks the byte buffers, chunk {i} holds the bytes [i*CHUNK_BYTES, (i+1)*CHUNK_BYTES)
+     * @param base byte offset of the first pixel (a multiple of 4)
+     * @param cellWidth bytes per pixel: 1, 2 or 4
+     */
+    PixelBuffer(ByteBuffer[] chunks, long base, int cellWidth) {
+        checkCellWidth(cellWidth);
+        this._chunks = chunks;
+        this._base = base;
+        this._cellWidth = cellWidth;
+    }
+
+    /**
+     * @return the number of chunks needed for {bytes} bytes
+     */
+    static int chunkCount(long bytes) {
+        return (int) ((bytes + CHUNK_BYTES - 1) >>> CHUNK_SHIFT);
+    }
+
+    /**
+     * @return the size of chunk {i} out of {bytes} bytes in total
+     */
+    static int chunkSize(long bytes, int i) {
+        return (int) Math.min(CHUNK_BYTES, bytes - ((long) i << CHUNK_SHIFT));
+    }
+
+    /**
+     * @throws RuntimeException if {cellWidth} is not 1, 2 or 4
+     */
+    static void checkCellWidth(int cellWidth) {
+        if (cellWidth != 1 && cellWidth != 2 && cellWidth != 4) {
+            throw new RuntimeException("Invalid cell width: " + cellWidth);
+        }
+    }
+
+    int get(long idx) {
+        long off = _base + idx * _cellWidth;
+        ByteBuffer b = _chunks[(int) (off >>> CHUNK_SHIFT)];
+        int pos = (int) (off & CHUNK_MASK);
+        switch (_cellWidth) {
+            case 1: return b.get(pos);
+            case 2: return b.getShort(pos);
+            default: return b.getInt(pos);
+        }
+    }
+
+    /**
+     * @throws RuntimeException if {v} does not fit the cell width
+     */
+    void set(long idx, int v) {
+        long off = _base + idx * _cellWidth;
+        ByteBuffer b = _chunks[(int) (off >>> CHUNK_SHIFT)];
+        int pos = (int) (off & CHUNK_MASK);
+        switch (_cellWidth) {
+            case 1:
+                if (v != (byte) v) throw new RuntimeException("Value " + v + " does not fit a 1 byte cell");
+                b.put(pos, (byte) v);
+                break;
+            case 2:
+                if (v != (short) v) throw new RuntimeException("Value " + v + " does not fit a 2 byte cell");
+                b.putShort(pos, (short) v);
+                break;
+            default:
+                b.putInt(pos, v);
+        }
+    }
+
+    /**
+     * Sets the pixels [from, to) to {v}.
+     */
+    void fill(long from, long to, int v) {
+        for (long i = from; i < to; i++) {
+            set(i, v);
+        }
+    }
+
+    /**
+     * Copies {src} into the pixels [idx, idx+src.length).
+     */
+    void put(long idx, int[] src) {
+        if (_cellWidth != 4) {
+            for (int i = 0; i < src.length; i++) set(idx + i, src[i]);
+            return;
+        }
+        for (int done = 0; done < src.length; ) {
+            long off = _base + (idx + done) * 4;
+            int n = Math.min(src.length - done, (int) ((CHUNK_BYTES - (off & CHUNK_MASK)) >>> 2));
+            intView(off).put(src, done, n);
+            done += n;
+        }
+    }
+
+    /**
+     * Copies the pixels [idx, idx+dst.length) into {dst}.
+     */
+    void get(long idx, int[] dst) {
+        if (_cellWidth != 4) {
+            for (int i = 0; i < dst.length; i++) dst[i] = get(idx + i);
+            return;
+        }
+        for (int done = 0; done < dst.length; ) {
+            long off = _base + (idx + done) * 4;
+            int n = Math.min(dst.length - done, (int) ((CHUNK_BYTES - (off & CHUNK_MASK)) >>> 2));
+            intView(off).get(dst, done, n);
+            done += n;
+        }
+    }
+
+    /**
+     * @return an int view of the chunk holding byte {off}, starting at that byte
+     */
+    private IntBuffer intView(long off) {
+        ByteBuffer b = _chunks[(int) (off >>> CHUNK_SHIFT)];
+        ByteBuffer view = b.duplicate().order(b.order());
+        view.position((int) (off & CHUNK_MASK));
+        return view.asIntBuffer();
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A path of pixels stored as a packed {int[]} of flat indices (x*h+y of the map it was found
+ * in), instead of one {@link Pixel2D} object per step.
+ *
+ * A path is filled by {@link Map#shortestPath(Pixel2D, Pixel2D, int, BfsWorkspace, PixelPath)}
+ * and can be reused for the next query: its buffer only grows, so repeated queries allocate
+ * nothing. Read it by index ({@link #getX(int)}, {@link #getY(int)}), or iterate it (which
+ * allocates an {@link Index2D} per pixel, like the {Pixel2D[]} paths).
+ */
+public class PixelPath implements Iterable<Pixel2D> {
+    private int[] _cells = new int[16];
+    private int _size = 0;
+    /** Height of the map the path was found in, to unpack the flat indices. */
+    private int _h = 1;
+
+    /**
+     * Constructs an empty path.
+     */
+    public PixelPath() {}
+
+    /**
+     * @return the number of pixels of the path, including both ends (0 when empty)
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return true iff the path holds no pixel (e.g. after a failed search)
+     */
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * @return the x coordinate of the i-th pixel of the path
+     * @throws RuntimeException if {i} is not in [0, size())
+     */
+    public int getX(int i) {
+        return cell(i) / _h;
+    }
+
+    /**
+     * @return the y coordinate of the i-th pixel of the path
+     * @throws RuntimeException if {i} is not in [0, size())
+     */
+    public int getY(int i) {
+        return cell(i) % _h;
+    }
+
+    /**
+     * @return a new pixel holding the i-th pixel of the path
+     * @throws RuntimeException if {i} is not in [0, size())
+     */
+    public Pixel2D get(int i) {
+        int c = cell(i);
+        return new Index2D(c / _h, c % _h);
+    }
+
+    /**
+     * @return the x coordinate of the first step (the pixel after the start), or of the start
+     * itself for a single pixel path
+     * @throws RuntimeException if the path is empty
+     */
+    public int getNextX() {
+        return getX(Math.min(1, _size - 1));
+    }
+
+    /**
+     * @return the y coordinate of the first step (the pixel after the start), or of the start
+     * itself for a single pixel path
+     * @throws RuntimeException if the path is empty
+     */
+    public int getNextY() {
+        return getY(Math.min(1, _size - 1));
+    }
+
+    /**
+     * Empties the path (the buffer is kept).
+     */
+    public void clear() {
+        _size = 0;
+    }
+
+    /**
+     * @return the path as an array of new {@link Index2D} pixels
+     */
+    public Pixel2D[] toArray() {
+        Pixel2D[] ans = new Pixel2D[_size];
+        for (int i = 0; i < _size; i++) {
+            ans[i] = new Index2D(_cells[i] / _h, _cells[i] % _h);
+        }
+        return ans;
+    }
+
+    @Override
+    public Iterator<Pixel2D> iterator() {
+        return new Iterator<Pixel2D>() {
+            private int _next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return _next < _size;
+            }
+
+            @Override
+            public Pixel2D next() {
+                if (_next >= _size) throw new NoSuchElementException();
+                return get(_next++);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * Prepares the path to receive {size} flat indices of a map of height {h}.
+     * @return the buffer to write them into (at least {size} long)
+     */
+    int[] reset(int size, int h) {
+        if (_cells.length < size) {
+            _cells = new int[Math.max(size, 2 * _cells.length)];
+        }
+        _size = size;
+        _h = h;
+        return _cells;
+    }
+
+    private int cell(int i) {
+        if (i < 0 || i >= _size) {
+            throw new RuntimeException("Path index out of bounds: " + i + " (size " + _size + ")");
+        }
+        return _cells[i];
+    }
+}
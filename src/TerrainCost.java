@@ -0,0 +1,140 @@
+import primitives.IntIntHashMap;
+
+/**
+ * The cost of entering each pixel, for the weighted searches of {@link Map}
+ * ({@link Map#allDistance(Pixel2D, int, TerrainCost)} and
+ * {@link Map#shortestPath(Pixel2D, Pixel2D, int, TerrainCost)}).
+ *
+ * Costs are small integers in [0, {@link #MAX_COST}], given either per color (a default cost
+ * plus the cost of some colors) or per pixel (a cost map of the same size as the searched map).
+ * The cost of a path is the sum of the costs of its pixels, the start excluded, so with every
+ * cost equal to 1 it is the plain path length, and the searches run the usual BFS.
+ * Obstacles are still given by the obstacle color of the search, not by a cost.
+ */
+public class TerrainCost {
+    /** Largest cost of a pixel. */
+    public static final int MAX_COST = 255;
+
+    private final int _default;
+    /** Costs of the colors that do not cost {_default} (per color costs only). */
+    private final IntIntHashMap _byColor;
+    /** Cost of every pixel, flat x*h+y (per pixel costs only). */
+    private final int[] _cells;
+    private final int _w, _h;
+    private int _min, _max;
+
+    /**
+     * Constructs per color costs, every color costing {defaultCost} until
+     * {@link #setColorCost(int, int)} changes it.
+     *
+     * @param defaultCost the cost of the colors without a cost of their own
+     * @throws RuntimeException if {defaultCost} is not in [0, MAX_COST]
+     */
+    public TerrainCost(int defaultCost) {
+        checkCost(defaultCost);
+        this._default = defaultCost;
+        this._byColor = new IntIntHashMap();
+        this._cells = null;
+        this._w = 0;
+        this._h = 0;
+        this._min = defaultCost;
+        this._max = defaultCost;
+    }
+
+    /**
+     * Constructs per pixel costs: the cost of the pixel (x,y) is {costs.getPixel(x,y)}.
+     * The costs are copied, later changes of {costs} are not seen.
+     *
+     * @param costs the cost of every pixel
+     * @throws RuntimeException if {costs} is null or a cost is not in [0, MAX_COST]
+     */
+    public TerrainCost(Map2D costs) {
+        if (costs == null) throw new RuntimeException("costs is null");
+        this._w = costs.getWidth();
+        this._h = costs.getHeight();
+        this._default = 0;
+        this._byColor = null;
+        this._cells = new int[_w * _h];
+        this._min = MAX_COST;
+        this._max = 0;
+        for (int x = 0, i = 0; x < _w; x++) {
+            for (int y = 0; y < _h; y++, i++) {
+                int c = costs.getPixel(x, y);
+                checkCost(c);
+                _cells[i] = c;
+                _min = Math.min(_min, c);
+                _max = Math.max(_max, c);
+            }
+        }
+    }
+
+    /**
+     * Sets the cost of entering the pixels of {color} (per color costs only).
+     *
+     * @param color a color
+     * @param cost its cost
+     * @throws RuntimeException if the costs are per pixel or {cost} is not in [0, MAX_COST]
+     */
+    public void setColorCost(int color, int cost) {
+        if (_byColor == null) throw new RuntimeException("costs are per pixel");
+        checkCost(cost);
+        _byColor.put(color, cost, _default);
+        _min = _default;
+        _max = _default;
+        for (int i = 0; i < _byColor.size(); i++) {
+            _min = Math.min(_min, _byColor.valueAt(i));
+            _max = Math.max(_max, _byColor.valueAt(i));
+        }
+    }
+
+    /**
+     * @return the cost of entering a pixel of {color} (per color costs only)
+     * @throws RuntimeException if the costs are per pixel
+     */
+    public int getColorCost(int color) {
+        if (_byColor == null) throw new RuntimeException("costs are per pixel");
+        return _byColor.get(color, _default);
+    }
+
+    /** @return true iff the costs are given per pixel. */
+    public boolean isPerPixel() {
+        return _cells != null;
+    }
+
+    /** @return the largest cost. */
+    public int getMaxCost() {
+        return _max;
+    }
+
+    /** @return the smallest cost. */
+    public int getMinCost() {
+        return _min;
+    }
+
+    /**
+     * @return true iff every cost is 1 (the searches are then plain BFS)
+     */
+    boolean isUnit() {
+        return _min == 1 && _max == 1;
+    }
+
+    /**
+     * @throws RuntimeException if the costs are per pixel and the size differs from w*h
+     */
+    void checkSize(int w, int h) {
+        if (_cells != null && (w != _w || h != _h)) {
+            throw new RuntimeException("cost map size does not match: " + _w + "x" + _h);
+        }
+    }
+
+    /**
+     * @return the cost of entering the pixel of flat index {idx} (x*h+y) and color {color}
+     */
+    int cost(int idx, int color) {
+        return (_cells != null) ? _cells[idx] : _byColor.get(color, _default);
+    }
+
+    private static void checkCost(int cost) {
+        if (cost < 0 || cost > MAX_COST) throw new RuntimeException("Invalid cost: " + cost);
+    }
+}
@@ -0,0 +1,342 @@
+import primitives.IntRingDeque;
+
+/**
+ * A sparse {@link Map2D} for huge, mostly uniform worlds: the map is cut into 64x64 tiles and a
+ * tile only gets a pixel array once it stops being uniform. Until then it is represented by a
+ * single value, so a map costs one int per tile plus 16KB per non-uniform tile (memory is
+ * proportional to the content, not to the bounding box).
+ *
+ * {@link #fill(Pixel2D, int)} works on whole tiles where it can: a uniform tile of the filled
+ * color is recolored in O(1) and the fill continues from its border. {@link #compact()} returns
+ * tiles that became uniform again to the single value representation.
+ *
+ * The searches keep their state per tile too: {@link #shortestPath(Pixel2D, Pixel2D, int)} keeps
+ * one byte per pixel of the tiles it enters, and {@link #allDistance(Pixel2D, int)} writes the
+ * distances into a TiledMap of -1, so only the tiles the BFS reaches get a pixel array. A search
+ * costs memory for the tiles it reaches (plus its queue), not for the whole map.
+ */
+public class TiledMap extends AbstractMap2D {
+    /** Tiles are TILE x TILE pixels. */
+    public static final int TILE_SHIFT = 6;
+    public static final int TILE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE - 1;
+    /** Search state of a pixel: not reached yet, or the start (otherwise, the step direction). */
+    private static final byte UNSEEN = -1, START = 4;
+
+    private int _w, _h;
+    private int _tilesX, _tilesY;
+    /** Pixels of the non-uniform tiles (column by column, x*TILE+y), null for uniform tiles. */
+    private int[][] _tiles;
+    /** Value of the uniform tiles (stale for the other ones). */
+    private int[] _uniform;
+    private int _allocated;
+
+    /**
+     * Constructs a w*h tiled map with an init value v; no tile is allocated.
+     * @param w width
+     * @param h height
+     * @param v init value of all the pixels
+     */
+    public TiledMap(int w, int h, int v) {
+        init(w, h, v);
+    }
+
+    /**
+     * Constructs a tiled copy of the given array; only its non-uniform tiles are allocated.
+     * @param data the pixels, data[x][y]
+     */
+    public TiledMap(int[][] data) {
+        init(data);
+    }
+
+    @Override
+    public void init(int w, int h, int v) {
+        checkSize(w, h);
+        _w = w;
+        _h = h;
+        _tilesX = (w + TILE_MASK) >>> TILE_SHIFT;
+        _tilesY = (h + TILE_MASK) >>> TILE_SHIFT;
+        int count = _tilesX * _tilesY;
+        _tiles = new int[count][];
+        _uniform = new int[count];
+        _allocated = 0;
+        if (v != 0) java.util.Arrays.fill(_uniform, v);
+    }
+
+    /**
+     * Copies the array, then keeps only its non-uniform tiles.
+     */
+    @Override
+    public void init(int[][] arr) {
+        super.init(arr);
+        compact();
+    }
+
+    @Override
+    public int getWidth() {
+        return _w;
+    }
+
+    @Override
+    public int getHeight() {
+        return _h;
+    }
+
+    /** @return the number of tiles of this map. */
+    public int getTileCount() {
+        return _tiles.length;
+    }
+
+    /** @return the number of tiles that hold a pixel array. */
+    public int getAllocatedTiles() {
+        return _allocated;
+    }
+
+    /**
+     * @return the approximate number of bytes held by the tiles and the tile index
+     */
+    public long getBytes() {
+        return 4L * _allocated * TILE * TILE + 12L * _tiles.length;
+    }
+
+    /**
+     * Frees the pixel arrays of the tiles that are uniform (e.g. after a fill).
+     * @return the number of freed tiles
+     */
+    public int compact() {
+        int freed = 0;
+        for (int t = 0; t < _tiles.length; t++) {
+            int[] tile = _tiles[t];
+            if (tile == null) continue;
+            int tx = t / _tilesY;
+            int ty = t - tx * _tilesY;
+            int tw = Math.min(TILE, _w - (tx << TILE_SHIFT));
+            int th = Math.min(TILE, _h - (ty << TILE_SHIFT));
+            int v = tile[0];
+            boolean uniform = true;
+            for (int x = 0; x < tw && uniform; x++) {
+                for (int y = 0, i = x << TILE_SHIFT; y < th; y++, i++) {
+                    if (tile[i] != v) {
+                        uniform = false;
+                        break;
+                    }
+                }
+            }
+            if (uniform) {
+                _tiles[t] = null;
+                _uniform[t] = v;
+                _allocated--;
+                freed++;
+            }
+        }
+        return freed;
+    }
+
+    @Override
+    protected int read(int x, int y) {
+        int t = (x >>> TILE_SHIFT) * _tilesY + (y >>> TILE_SHIFT);
+        int[] tile = _tiles[t];
+        return (tile == null) ? _uniform[t] : tile[((x & TILE_MASK) << TILE_SHIFT) | (y & TILE_MASK)];
+    }
+
+    @Override
+    protected void write(int x, int y, int v) {
+        int t = (x >>> TILE_SHIFT) * _tilesY + (y >>> TILE_SHIFT);
+        int[] tile = _tiles[t];
+        if (tile == null) {
+            if (_uniform[t] == v) return;
+            tile = new int[TILE * TILE];
+            java.util.Arrays.fill(tile, _uniform[t]);
+            _tiles[t] = tile;
+            _allocated++;
+        }
+        tile[((x & TILE_MASK) << TILE_SHIFT) | (y & TILE_MASK)] = v;
+    }
+
+    /**
+     * Fills the connected component of {xy}, see {@link Map#fill(Pixel2D, int)}.
+     * A uniform tile of the old color is a connected block: it is recolored as a whole, and the
+     * fill goes on from the pixels just outside its border.
+     */
+    @Override
+    public int fill(Pixel2D xy, int new_v) {
+        if (xy == null) {
+            throw new RuntimeException("pixel is null");
+        }
+        int h = _h;
+        int s = toIndex(xy);
+        int oldColor = read(s / h, s % h);
+        if (oldColor == new_v) {
+            return 0;
+        }
+        IntStack stack = new IntStack();
+        stack.push(s);
+        int count = 0;
+        while (!stack.isEmpty()) {
+            int c = stack.pop();
+            int cx = c / h;
+            int cy = c - cx * h;
+            if (read(cx, cy) != oldColor) continue;
+
+            int t = (cx >>> TILE_SHIFT) * _tilesY + (cy >>> TILE_SHIFT);
+            if (_tiles[t] == null) {
+                // the whole (uniform) tile is part of the component
+                _uniform[t] = new_v;
+                int x0 = cx & ~TILE_MASK;
+                int y0 = cy & ~TILE_MASK;
+                int tw = Math.min(TILE, _w - x0);
+                int th = Math.min(TILE, _h - y0);
+                count += tw * th;
+                for (int i = 0; i < tw; i++) {
+                    pushIf(stack, neighbor((x0 + i) * h + y0, 3), oldColor);
+                    pushIf(stack, neighbor((x0 + i) * h + y0 + th - 1, 2), oldColor);
+                }
+                for (int j = 0; j < th; j++) {
+                    pushIf(stack, neighbor(x0 * h + y0 + j, 1), oldColor);
+                    pushIf(stack, neighbor((x0 + tw - 1) * h + y0 + j, 0), oldColor);
+                }
+                continue;
+            }
+
+            write(cx, cy, new_v);
+            count++;
+            for (int k = 0; k < 4; k++) {
+                pushIf(stack, neighbor(c, k), oldColor);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * BFS shortest path, see {@link Map#shortestPath(Pixel2D, Pixel2D, int)}. The direction of
+     * the step that reached each pixel is kept in per tile arrays, allocated when the BFS first
+     * enters a tile.
+     */
+    @Override
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor) {
+        if (p1 == null || p2 == null) {
+            throw new RuntimeException("p1 or p2 is null");
+        }
+        int h = _h;
+        int s = toIndex(p1);
+        int t = toIndex(p2);
+        if (read(s / h, s % h) == obsColor || read(t / h, t % h) == obsColor) {
+            return null;
+        }
+        byte[][] parent = new byte[_tiles.length][];
+        setParent(parent, s, START);
+        IntRingDeque q = new IntRingDeque();
+        q.addLast(s);
+        boolean found = (s == t);
+        while (!found && !q.isEmpty()) {
+            int c = q.pollFirst();
+            for (int k = 0; k < 4; k++) {
+                int n = neighbor(c, k);
+                if (n < 0 || getParent(parent, n) != UNSEEN || read(n / h, n % h) == obsColor) continue;
+                setParent(parent, n, k);
+                if (n == t) {
+                    found = true;
+                    break;
+                }
+                q.addLast(n);
+            }
+        }
+        if (!found) {
+            return null;
+        }
+        int len = 0;
+        // directions come in opposite pairs: 0<->1, 2<->3
+        for (int c = t; c != s; c = neighbor(c, getParent(parent, c) ^ 1)) len++;
+        Pixel2D[] path = new Pixel2D[len + 1];
+        int c = t;
+        for (int i = len; i >= 0; i--) {
+            path[i] = new Index2D(c / h, c % h);
+            if (i > 0) c = neighbor(c, getParent(parent, c) ^ 1);
+        }
+        return path;
+    }
+
+    /**
+     * BFS distances from {start}, see {@link Map#allDistance(Pixel2D, int)}. The result is a
+     * TiledMap of -1 in which only the tiles reached by the BFS hold a pixel array.
+     */
+    @Override
+    public TiledMap allDistance(Pixel2D start, int obsColor) {
+        if (start == null) throw new RuntimeException("start is null");
+        int h = _h;
+        int s = toIndex(start);
+        TiledMap result = new TiledMap(_w, h, -1);
+        result.setCyclic(isCyclic());
+        if (read(s / h, s % h) == obsColor) {
+            return result;
+        }
+        result.write(s / h, s % h, 0);
+        IntRingDeque q = new IntRingDeque();
+        q.addLast(s);
+        while (!q.isEmpty()) {
+            int c = q.pollFirst();
+            int nd = result.read(c / h, c % h) + 1;
+            for (int k = 0; k < 4; k++) {
+                int n = neighbor(c, k);
+                if (n < 0) continue;
+                int nx = n / h;
+                int ny = n - nx * h;
+                if (result.read(nx, ny) != -1 || read(nx, ny) == obsColor) continue;
+                result.write(nx, ny, nd);
+                q.addLast(n);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the search state of the flat index {c}: UNSEEN, START or a step direction
+     */
+    private byte getParent(byte[][] parent, int c) {
+        int x = c / _h;
+        int y = c - x * _h;
+        byte[] tile = parent[(x >>> TILE_SHIFT) * _tilesY + (y >>> TILE_SHIFT)];
+        return (tile == null) ? UNSEEN : tile[((x & TILE_MASK) << TILE_SHIFT) | (y & TILE_MASK)];
+    }
+
+    private void setParent(byte[][] parent, int c, int state) {
+        int x = c / _h;
+        int y = c - x * _h;
+        int t = (x >>> TILE_SHIFT) * _tilesY + (y >>> TILE_SHIFT);
+        byte[] tile = parent[t];
+        if (tile == null) {
+            tile = new byte[TILE * TILE];
+            java.util.Arrays.fill(tile, UNSEEN);
+            parent[t] = tile;
+        }
+        tile[((x & TILE_MASK) << TILE_SHIFT) | (y & TILE_MASK)] = (byte) state;
+    }
+
+    /**
+     * Pushes the flat index {n} on the fill stack if it is inside the map and of color {oldColor}.
+     */
+    private void pushIf(IntStack stack, int n, int oldColor) {
+        if (n >= 0 && read(n / _h, n % _h) == oldColor) stack.push(n);
+    }
+
+    /**
+     * A growable stack of ints.
+     */
+    private static final class IntStack {
+        private int[] _items = new int[64];
+        private int _size = 0;
+
+        void push(int v) {
+            if (_size == _items.length) _items = java.util.Arrays.copyOf(_items, _size * 2);
+            _items[_size++] = v;
+        }
+
+        int pop() {
+            return _items[--_size];
+        }
+
+        boolean isEmpty() {
+            return _size == 0;
+        }
+    }
+}
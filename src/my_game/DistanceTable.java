@@ -0,0 +1,289 @@
+package my_game;
+
+import primitives.MultiSourceBfs;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * All-pairs shortest path distances of a static maze (walls only).
+ *
+ * The walls of a level never change, so the table is built once per level and then answers
+ * {@link #distance} and {@link #nextStep} queries in O(1).
+ *
+ * Storage:
+ * - only passable cells get a row/column: a cell -> compact index remap ({@link #cellIndex}).
+ * - distances are stored as unsigned bytes when the maze diameter allows it, otherwise as shorts.
+ *   The width is chosen before the sweeps, from an upper bound on the diameter (twice the
+ *   eccentricity of one cell per connected component), so the table is written only once.
+ * - the build runs bit-parallel BFS sweeps ({@link MultiSourceBfs}), 64 sources of the same
+ *   colour and area per sweep ({@link MultiSourceBfs#batchOrder}), split across sweeps with
+ *   fork/join.
+ *
+ * Moves follow the game conventions: UP is y+1, and the board wraps around when cyclic.
+ */
+public class DistanceTable {
+
+    /** Distance returned for walls, out-of-table cells and unreachable pairs. */
+    public static final int UNREACHABLE = -1;
+
+    /** Sources handled by one fork/join leaf task: one bit-parallel sweep. */
+    private static final int SOURCES_PER_TASK = MultiSourceBfs.BATCH;
+
+    private static final int[] DIRS = {PacManGame.UP, PacManGame.LEFT, PacManGame.DOWN, PacManGame.RIGHT};
+
+    private final int w, h;
+    private final int n;
+    /** w*h entries: compact index of each cell, or -1 for walls. */
+    private final int[] cellToIndex;
+    /** n entries: flat cell (x*h+y) of each compact index. */
+    private final int[] indexToCell;
+    /** 4*n entries: compact index of the neighbour in DIRS[k] order, or -1. */
+    private final int[] nbr;
+
+    /** n*n distances, exactly one of the two is used (0xFF / -1 mean unreachable). */
+    private byte[] dist8;
+    private short[] dist16;
+
+    private DistanceTable(int[][] board, int wallValue, boolean cyclic) {
+        this.w = board.length;
+        this.h = board[0].length;
+
+        cellToIndex = new int[w * h];
+        int count = 0;
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                cellToIndex[x * h + y] = (board[x][y] == wallValue) ? -1 : count++;
+            }
+        }
+        if ((long) count * count > Integer.MAX_VALUE) {
+            throw new RuntimeException("maze too large for an all-pairs table: " + count + " cells");
+        }
+        this.n = count;
+
+        indexToCell = new int[n];
+        nbr = new int[4 * n];
+        for (int c = 0; c < w * h; c++) {
+            int i = cellToIndex[c];
+            if (i < 0) continue;
+            indexToCell[i] = c;
+            int x = c / h, y = c % h;
+            for (int k = 0; k < 4; k++) {
+                int nx = x + dx(DIRS[k]);
+                int ny = y + dy(DIRS[k]);
+                if (cyclic) {
+                    nx = Math.floorMod(nx, w);
+                    ny = Math.floorMod(ny, h);
+                } else if (nx < 0 || ny < 0 || nx >= w || ny >= h) {
+                    nbr[4 * i + k] = -1;
+                    continue;
+                }
+                nbr[4 * i + k] = cellToIndex[nx * h + ny];
+            }
+        }
+    }
+
+    /**
+     * Builds the table for a board, using the common fork/join pool.
+     *
+     * @param board the game board [w][h]
+     * @param wallValue the board value of walls
+     * @param cyclic true if the board wraps around
+     * @return the all-pairs distance table
+     * @throws RuntimeException if the board is empty or too large for a table
+     */
+    public static DistanceTable build(int[][] board, int wallValue, boolean cyclic) {
+        return build(board, wallValue, cyclic, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the table for a board, running the BFS sweeps on the given pool.
+     *
+     * @param board the game board [w][h]
+     * @param wallValue the board value of walls
+     * @param cyclic true if the board wraps around
+     * @param pool the fork/join pool to use
+     * @return the all-pairs distance table
+     */
+    public static DistanceTable build(int[][] board, int wallValue, boolean cyclic, ForkJoinPool pool) {
+        if (board == null || board.length == 0 || board[0] == null || board[0].length == 0) {
+            throw new RuntimeException("board is empty");
+        }
+        DistanceTable table = new DistanceTable(board, wallValue, cyclic);
+        if (table.diameterBound() < 0xFF) {
+            table.dist8 = new byte[table.n * table.n];
+        } else {
+            table.dist16 = new short[table.n * table.n];
+        }
+        int[] order = MultiSourceBfs.batchOrder(table.indexToCell, table.h);
+        pool.invoke(table.new BuildTask(order, 0, table.n));
+        return table;
+    }
+
+    /**
+     * @return the number of passable cells (rows of the table).
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * @return the compact index of the cell (x,y), or -1 if it is a wall or outside the board.
+     */
+    public int cellIndex(int x, int y) {
+        if (x < 0 || y < 0 || x >= w || y >= h) return -1;
+        return cellToIndex[x * h + y];
+    }
+
+    /** @return the x coordinate of a compact index. */
+    public int getX(int index) {
+        return indexToCell[index] / h;
+    }
+
+    /** @return the y coordinate of a compact index. */
+    public int getY(int index) {
+        return indexToCell[index] % h;
+    }
+
+    /**
+     * @param a compact index of the first cell
+     * @param b compact index of the second cell
+     * @return the shortest path length between the cells, or {@link #UNREACHABLE}
+     */
+    public int distance(int a, int b) {
+        int i = a * n + b;
+        if (dist8 != null) {
+            int d = dist8[i] & 0xFF;
+            return (d == 0xFF) ? UNREACHABLE : d;
+        }
+        return dist16[i];
+    }
+
+    /**
+     * @return the shortest path length between (x1,y1) and (x2,y2), or {@link #UNREACHABLE}
+     * if one of them is a wall / outside the board or there is no path.
+     */
+    public int distance(int x1, int y1, int x2, int y2) {
+        int a = cellIndex(x1, y1);
+        int b = cellIndex(x2, y2);
+        if (a < 0 || b < 0) return UNREACHABLE;
+        return distance(a, b);
+    }
+
+    /**
+     * Returns the next cell on a shortest path from {a} to {b} (the first neighbour one step closer).
+     *
+     * @param a compact index of the current cell
+     * @param b compact index of the target cell
+     * @return the compact index of the next cell, or -1 if a==b or {b} is unreachable
+     */
+    public int nextStep(int a, int b) {
+        int k = nextDirIndex(a, b);
+        return (k < 0) ? -1 : nbr[4 * a + k];
+    }
+
+    /**
+     * @return the direction (PacManGame.UP/LEFT/DOWN/RIGHT) of the first move on a shortest path
+     * from (x1,y1) to (x2,y2), or PacManGame.STAY if they are equal or not connected.
+     */
+    public int nextDirection(int x1, int y1, int x2, int y2) {
+        int a = cellIndex(x1, y1);
+        int b = cellIndex(x2, y2);
+        if (a < 0 || b < 0) return PacManGame.STAY;
+        int k = nextDirIndex(a, b);
+        return (k < 0) ? PacManGame.STAY : DIRS[k];
+    }
+
+    private int nextDirIndex(int a, int b) {
+        int d = distance(a, b);
+        if (d <= 0) return -1;
+        for (int k = 0; k < 4; k++) {
+            int m = nbr[4 * a + k];
+            if (m >= 0 && distance(m, b) == d - 1) return k;
+        }
+        return -1;
+    }
+
+    /**
+     * An upper bound on the largest finite distance: one BFS per connected component, from its
+     * first cell {c}; every distance of the component is at most d(a,c) + d(c,b) <= 2*ecc(c).
+     */
+    private int diameterBound() {
+        int[] dist = new int[n];
+        Arrays.fill(dist, -1);
+        int[] queue = new int[n];
+        int bound = 0;
+        for (int c = 0; c < n; c++) {
+            if (dist[c] >= 0) continue;
+            dist[c] = 0;
+            queue[0] = c;
+            int head = 0, tail = 1, ecc = 0;
+            while (head < tail) {
+                int v = queue[head++];
+                ecc = dist[v];
+                for (int k = 4 * v, end = k + 4; k < end; k++) {
+                    int m = nbr[k];
+                    if (m >= 0 && dist[m] < 0) {
+                        dist[m] = ecc + 1;
+                        queue[tail++] = m;
+                    }
+                }
+            }
+            bound = Math.max(bound, 2 * ecc);
+        }
+        return bound;
+    }
+
+    /**
+     * Fork/join task computing the rows of the sources order[lo, hi), one bit-parallel BFS sweep
+     * per {@link #SOURCES_PER_TASK} sources.
+     */
+    private class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] order;
+        private final int lo, hi;
+
+        BuildTask(int[] order, int lo, int hi) {
+            this.order = order;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > SOURCES_PER_TASK) {
+                // split on a sweep boundary, so that every sweep but the last one is full
+                int sweeps = (hi - lo + SOURCES_PER_TASK - 1) / SOURCES_PER_TASK;
+                int mid = lo + (sweeps / 2) * SOURCES_PER_TASK;
+                invokeAll(new BuildTask(order, lo, mid), new BuildTask(order, mid, hi));
+                return;
+            }
+            int[] rows = new int[hi - lo];
+            for (int j = 0; j < rows.length; j++) {
+                rows[j] = order[lo + j] * n;
+            }
+            MultiSourceBfs bfs = new MultiSourceBfs(nbr, n);
+            // the byte table is only chosen under the diameter bound, so only shorts can overflow
+            boolean fits = (dist8 != null)
+                    ? bfs.run(order, lo, hi - lo, dist8, rows)
+                    : bfs.run(order, lo, hi - lo, dist16, rows);
+            if (!fits) {
+                throw new RuntimeException("maze diameter too large for a short table");
+            }
+        }
+    }
+
+    private static int dx(int dir) {
+        if (dir == PacManGame.LEFT) return -1;
+        if (dir == PacManGame.RIGHT) return 1;
+        return 0;
+    }
+
+    private static int dy(int dir) {
+        if (dir == PacManGame.UP) return 1;
+        if (dir == PacManGame.DOWN) return -1;
+        return 0;
+    }
+}
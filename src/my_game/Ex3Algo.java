@@ -1,8 +1,12 @@
 package my_game;
 
 import java.awt.*;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import primitives.Coords;
+import primitives.IntIntHashMap;
+import primitives.IntRingDeque;
+import primitives.LongHashSet;
 
 
 /**
@@ -92,7 +96,28 @@ public class Ex3Algo implements PacManAlgo {
 
     private int prevW = -1, prevH = -1;
 
-    private final ArrayDeque<Long> lastPositions = new ArrayDeque<>();
+    /** Flat cells (x*h+y) of the last LOOP_MEM positions, oldest first. */
+    private final IntRingDeque lastPositions = new IntRingDeque(LOOP_MEM + 1);
+
+    /**
+     * Cells of the non-eatable ghosts of the current move (packed with {@link Coords#pack}),
+     * answering {@link #isNonEatableGhostAt} for {dangerGhosts} without re-parsing every ghost.
+     */
+    private final LongHashSet dangerCells = new LongHashSet();
+    private GhostCL[] dangerGhosts = null;
+
+    /**
+     * All-pairs wall distances of the current level (walls never change during a level).
+     * Built off the game thread, so that the first move of a level does not wait for it;
+     * null until the build is done.
+     */
+    private DistanceTable distTable = null;
+    private ForkJoinTask<DistanceTable> distTableTask = null;
+    /**
+     * Wall flags (x*h+y) of the board the table is built from. A new level of the same size
+     * has other walls, and its table must be rebuilt: an old table is not a lower bound.
+     */
+    private boolean[] distTableWalls = null;
 
     public Ex3Algo() {
         _count = 0;
@@ -110,9 +135,46 @@ public class Ex3Algo implements PacManAlgo {
         lastY = Integer.MIN_VALUE;
         lastDir = Game.STAY;
         baseWallValue = Integer.MIN_VALUE;
+        dropDistTable();
         _count = 0;
     }
 
+    private void dropDistTable() {
+        if (distTableTask != null) distTableTask.cancel(false);
+        distTableTask = null;
+        distTable = null;
+        distTableWalls = null;
+    }
+
+    /**
+     * Starts building the wall distance table of the level in the common fork/join pool.
+     * The table only prunes searches whose result it cannot change, so the moves are the same
+     * before and after it is ready (a failed build just leaves it null).
+     */
+    private ForkJoinTask<DistanceTable> buildDistTable(int[][] b, int wallValue) {
+        int h = b[0].length;
+        int[][] walls = new int[b.length][];
+        distTableWalls = new boolean[b.length * h];
+        for (int x = 0; x < b.length; x++) {
+            walls[x] = b[x].clone();
+            for (int y = 0; y < h; y++) distTableWalls[x * h + y] = (b[x][y] == wallValue);
+        }
+        return ForkJoinPool.commonPool().submit(() -> DistanceTable.build(walls, wallValue, true));
+    }
+
+    /**
+     * @return true if the walls of {b} are the ones the distance table is built from
+     */
+    private boolean sameWalls(int[][] b, int wallValue) {
+        int h = b[0].length;
+        for (int x = 0; x < b.length; x++) {
+            for (int y = 0; y < h; y++) {
+                if ((b[x][y] == wallValue) != distTableWalls[x * h + y]) return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Main decision function called each tick by the game.
      *
@@ -137,6 +199,15 @@ public class Ex3Algo implements PacManAlgo {
         if (baseWallValue == Integer.MIN_VALUE) {
             baseWallValue = detectWallValueStable(b);
         }
+        if (distTableTask != null && !sameWalls(b, baseWallValue)) {
+            dropDistTable(); // a new level of the same size
+        }
+        if (distTableTask == null) {
+            distTableTask = buildDistTable(b, baseWallValue);
+        }
+        if (distTable == null && distTableTask.isDone() && !distTableTask.isCompletedAbnormally()) {
+            distTable = distTableTask.join();
+        }
 
         int[] pac = parseXY(game.getPos(code));
         int px = wrapX(pac[0], b), py = wrapY(pac[1], b);
@@ -145,6 +216,7 @@ public class Ex3Algo implements PacManAlgo {
         else stuckCount = 0;
 
         GhostCL[] ghosts = game.getGhosts(code);
+        indexDangerGhosts(ghosts, code);
         pushPos(px, py);
 
         boolean powerMode = isPowerMode(ghosts, code);
@@ -325,19 +397,19 @@ public class Ex3Algo implements PacManAlgo {
             }
         }
 
-        ArrayDeque<int[]> q = new ArrayDeque<>();
-        q.add(new int[]{px, py});
+        IntRingDeque q = new IntRingDeque(w * h);
+        q.addLast(px * h + py);
         vis[px][py] = true;
         dist[px][py] = 0;
 
         int[] dirs = {Game.UP, Game.LEFT, Game.DOWN, Game.RIGHT};
 
         int foundDist = Integer.MAX_VALUE;
-        ArrayList<int[]> candidates = new ArrayList<>();
+        IntRingDeque candidates = new IntRingDeque();
 
         while (!q.isEmpty()) {
-            int[] cur = q.poll();
-            int cx = cur[0], cy = cur[1];
+            int cur = q.pollFirst();
+            int cx = cur / h, cy = cur % h;
             int cd = dist[cx][cy];
 
             if (cd > foundDist) break; // stop after minimal layer
@@ -357,13 +429,13 @@ public class Ex3Algo implements PacManAlgo {
                     if (dist[nx][ny] < foundDist) {
                         foundDist = dist[nx][ny];
                         candidates.clear();
-                        candidates.add(new int[]{nx, ny});
+                        candidates.addLast(nx * h + ny);
                     } else if (dist[nx][ny] == foundDist) {
-                        candidates.add(new int[]{nx, ny});
+                        candidates.addLast(nx * h + ny);
                     }
                 }
 
-                q.add(new int[]{nx, ny});
+                q.addLast(nx * h + ny);
             }
         }
 
@@ -372,8 +444,9 @@ public class Ex3Algo implements PacManAlgo {
         int bestDir = Game.STAY;
         int bestScore = Integer.MIN_VALUE;
 
-        for (int[] c : candidates) {
-            int x = c[0], y = c[1];
+        for (int i = 0; i < candidates.size(); i++) {
+            int c = candidates.get(i);
+            int x = c / h, y = c % h;
             int dir = firstDir[x][y];
             if (dir == Game.STAY) continue;
 
@@ -408,15 +481,16 @@ public class Ex3Algo implements PacManAlgo {
 
         int w = b.length, h = b[0].length;
         boolean[][] vis = new boolean[w][h];
-        ArrayDeque<int[]> q = new ArrayDeque<>();
-        q.add(new int[]{sx, sy, 0});
+        int[] distOf = new int[w * h];
+        IntRingDeque q = new IntRingDeque(w * h);
+        q.addLast(sx * h + sy);
         vis[sx][sy] = true;
 
         int[] dirs = {Game.UP, Game.LEFT, Game.DOWN, Game.RIGHT};
 
         while (!q.isEmpty()) {
-            int[] cur = q.poll();
-            int x = cur[0], y = cur[1], dist = cur[2];
+            int cur = q.pollFirst();
+            int x = cur / h, y = cur % h, dist = distOf[cur];
 
             if (b[x][y] == targetValue && !(x == sx && y == sy)) return dist;
 
@@ -428,7 +502,8 @@ public class Ex3Algo implements PacManAlgo {
                 if (!passable(nx, ny, b, blockPowerTiles, ghosts, code)) continue;
 
                 vis[nx][ny] = true;
-                q.add(new int[]{nx, ny, dist + 1});
+                distOf[nx * h + ny] = dist + 1;
+                q.addLast(nx * h + ny);
             }
         }
         return Integer.MAX_VALUE;
@@ -455,22 +530,32 @@ public class Ex3Algo implements PacManAlgo {
 
     /**
      * BFS distance between two coordinates (walls/ghost blocks apply).
+     * The level's wall distance table answers the cases that need no search: the BFS never
+     * enters a blocked cell (so a blocked target is unreachable), and it can only be longer than
+     * the wall-only distance (so a pair the table cannot connect is unreachable too).
      */
     private int bfsDist(int sx, int sy, int tx, int ty, int[][] b,
                         boolean blockPowerTiles, GhostCL[] ghosts, int code) {
         if (sx == tx && sy == ty) return 0;
+        if (b[tx][ty] == baseWallValue) return Integer.MAX_VALUE;
+        if (blockPowerTiles && b[tx][ty] == POWER) return Integer.MAX_VALUE;
+        if (isNonEatableGhostAt(tx, ty, ghosts, code)) return Integer.MAX_VALUE;
+        if (distTable != null && distTable.distance(sx, sy, tx, ty) == DistanceTable.UNREACHABLE) {
+            return Integer.MAX_VALUE;
+        }
 
         int w = b.length, h = b[0].length;
         boolean[][] vis = new boolean[w][h];
-        ArrayDeque<int[]> q = new ArrayDeque<>();
-        q.add(new int[]{sx, sy, 0});
+        int[] distOf = new int[w * h];
+        IntRingDeque q = new IntRingDeque(w * h);
+        q.addLast(sx * h + sy);
         vis[sx][sy] = true;
 
         int[] dirs = {Game.UP, Game.LEFT, Game.DOWN, Game.RIGHT};
 
         while (!q.isEmpty()) {
-            int[] cur = q.poll();
-            int x = cur[0], y = cur[1], dist = cur[2];
+            int cur = q.pollFirst();
+            int x = cur / h, y = cur % h, dist = distOf[cur];
 
             for (int d : dirs) {
                 int nx = stepX(x, d, b);
@@ -484,7 +569,8 @@ public class Ex3Algo implements PacManAlgo {
                 if (nx == tx && ny == ty) return dist + 1;
 
                 vis[nx][ny] = true;
-                q.add(new int[]{nx, ny, dist + 1});
+                distOf[nx * h + ny] = dist + 1;
+                q.addLast(nx * h + ny);
             }
         }
         return Integer.MAX_VALUE;
@@ -496,18 +582,15 @@ public class Ex3Algo implements PacManAlgo {
      * Push current position into loop memory.
      */
     private void pushPos(int x, int y) {
-        long key = (((long) x) << 32) ^ (y & 0xffffffffL);
-        lastPositions.addLast(key);
-        while (lastPositions.size() > LOOP_MEM) lastPositions.removeFirst();
+        lastPositions.addLast(x * prevH + y);
+        while (lastPositions.size() > LOOP_MEM) lastPositions.pollFirst();
     }
 
     /**
      * @return true if (x,y) was visited recently.
      */
     private boolean isRecentPos(int x, int y) {
-        long key = (((long) x) << 32) ^ (y & 0xffffffffL);
-        for (long k : lastPositions) if (k == key) return true;
-        return false;
+        return lastPositions.contains(x * prevH + y);
     }
 
     /**
@@ -638,6 +721,7 @@ public class Ex3Algo implements PacManAlgo {
      */
     private boolean isNonEatableGhostAt(int x, int y, GhostCL[] ghosts, int code) {
         if (ghosts == null) return false;
+        if (ghosts == dangerGhosts) return dangerCells.contains(Coords.pack(x, y));
         for (GhostCL g : ghosts) {
             if (g == null) continue;
             if (g.remainTimeAsEatable(code) > 0) continue;
@@ -647,55 +731,34 @@ public class Ex3Algo implements PacManAlgo {
         return false;
     }
 
-    // ===================== WALL DETECTION (NO HASHMAP) =====================
-
-    // Simple int->count structure without HashMap (arrays + linear search)
-    private static class IntCounter {
-        private int[] vals;
-        private int[] cnts;
-        private int size;
-
-        IntCounter(int capacity) {
-            if (capacity < 4) capacity = 4;
-            vals = new int[capacity];
-            cnts = new int[capacity];
-            size = 0;
-        }
-
-        void add(int v) {
-            for (int i = 0; i < size; i++) {
-                if (vals[i] == v) {
-                    cnts[i]++;
-                    return;
-                }
-            }
-            ensureCapacity(size + 1);
-            vals[size] = v;
-            cnts[size] = 1;
-            size++;
+    /**
+     * Indexes the cells of the non-eatable ghosts of this move (ghosts do not move during it).
+     */
+    private void indexDangerGhosts(GhostCL[] ghosts, int code) {
+        dangerCells.clear();
+        dangerGhosts = ghosts;
+        if (ghosts == null) return;
+        for (GhostCL g : ghosts) {
+            if (g == null) continue;
+            if (g.remainTimeAsEatable(code) > 0) continue;
+            int[] gp = parseXY(g.getPos(code));
+            dangerCells.add(Coords.pack(gp[0], gp[1]));
         }
+    }
 
-        int argMaxValueOr(int fallback) {
-            if (size == 0) return fallback;
-            int bestIdx = 0;
-            for (int i = 1; i < size; i++) {
-                if (cnts[i] > cnts[bestIdx]) bestIdx = i;
-            }
-            return vals[bestIdx];
-        }
+    // ===================== WALL DETECTION =====================
 
-        private void ensureCapacity(int needed) {
-            if (needed <= vals.length) return;
-            int newCap = Math.max(needed, vals.length * 2);
-            int[] nv = new int[newCap];
-            int[] nc = new int[newCap];
-            for (int i = 0; i < size; i++) {
-                nv[i] = vals[i];
-                nc[i] = cnts[i];
-            }
-            vals = nv;
-            cnts = nc;
+    /**
+     * @return the key with the highest count in {freq} (the first one inserted on ties),
+     * or {fallback} when it is empty
+     */
+    private static int argMaxKeyOr(IntIntHashMap freq, int fallback) {
+        if (freq.isEmpty()) return fallback;
+        int bestIdx = 0;
+        for (int i = 1; i < freq.size(); i++) {
+            if (freq.valueAt(i) > freq.valueAt(bestIdx)) bestIdx = i;
         }
+        return freq.keyAt(bestIdx);
     }
 
     /**
@@ -704,7 +767,7 @@ public class Ex3Algo implements PacManAlgo {
      */
     private int detectWallValueStable(int[][] b) {
         int w = b.length, h = b[0].length;
-        IntCounter borderFreq = new IntCounter(2 * w + 2 * h);
+        IntIntHashMap borderFreq = new IntIntHashMap();
 
         for (int x = 0; x < w; x++) {
             addIfWallCandidate(borderFreq, b[x][0]);
@@ -715,43 +778,43 @@ public class Ex3Algo implements PacManAlgo {
             addIfWallCandidate(borderFreq, b[w - 1][y]);
         }
 
-        int bestVal = borderFreq.argMaxValueOr(Integer.MIN_VALUE);
+        int bestVal = argMaxKeyOr(borderFreq, Integer.MIN_VALUE);
         if (bestVal != Integer.MIN_VALUE) return bestVal;
 
         return mostFrequentExcluding(b, DOT, POWER);
     }
 
-    private void addIfWallCandidate(IntCounter freq, int v) {
+    private void addIfWallCandidate(IntIntHashMap freq, int v) {
         if (v == DOT || v == POWER || v == 0) return;
-        freq.add(v);
+        freq.addTo(v, 1);
     }
 
     private static int mostFrequentExcluding(int[][] b, int a, int c) {
         int w = b.length, h = b[0].length;
-        IntCounter freq = new IntCounter(w * h);
+        IntIntHashMap freq = new IntIntHashMap();
 
         for (int x = 0; x < w; x++) {
             for (int y = 0; y < h; y++) {
                 int v = b[x][y];
                 if (v == a || v == c || v == 0) continue;
-                freq.add(v);
+                freq.addTo(v, 1);
             }
         }
 
-        int bestVal = freq.argMaxValueOr(Integer.MIN_VALUE);
+        int bestVal = argMaxKeyOr(freq, Integer.MIN_VALUE);
         return (bestVal == Integer.MIN_VALUE) ? mostFrequent(b) : bestVal;
     }
 
     private static int mostFrequent(int[][] b) {
         int w = b.length, h = b[0].length;
-        IntCounter freq = new IntCounter(w * h);
+        IntIntHashMap freq = new IntIntHashMap();
 
         for (int x = 0; x < w; x++) {
             for (int y = 0; y < h; y++) {
-                freq.add(b[x][y]);
+                freq.addTo(b[x][y], 1);
             }
         }
-        return freq.argMaxValueOr(b[0][0]);
+        return argMaxKeyOr(freq, b[0][0]);
     }
 
     // ===================== BASIC =====================
@@ -875,6 +938,13 @@ public class Ex3Algo implements PacManAlgo {
             int[] gp = parseXY(g.getPos(code));
             int gx = wrapX(gp[0], b), gy = wrapY(gp[1], b);
 
+            // The wall-only table distance is a lower bound of the real (blocked) distance:
+            // skip ghosts that cannot be reached in time without running a BFS.
+            if (distTable != null) {
+                int lower = distTable.distance(px, py, gx, gy);
+                if (lower == DistanceTable.UNREACHABLE || lower > t - EATABLE_TIME_MARGIN) continue;
+            }
+
             int d = bfsDist(px, py, gx, gy, b, blockPowerTiles, ghosts, code);
             if (d == Integer.MAX_VALUE) continue;
 
@@ -918,15 +988,15 @@ public class Ex3Algo implements PacManAlgo {
             for (int j = 0; j < h; j++) firstDir[i][j] = Game.STAY;
         }
 
-        ArrayDeque<int[]> q = new ArrayDeque<>();
-        q.add(new int[]{sx, sy});
+        IntRingDeque q = new IntRingDeque(w * h);
+        q.addLast(sx * h + sy);
         vis[sx][sy] = true;
 
         int[] dirs = {Game.UP, Game.LEFT, Game.DOWN, Game.RIGHT};
 
         while (!q.isEmpty()) {
-            int[] cur = q.poll();
-            int x = cur[0], y = cur[1];
+            int cur = q.pollFirst();
+            int x = cur / h, y = cur % h;
 
             for (int d : dirs) {
                 int nx = stepX(x, d, b);
@@ -940,7 +1010,7 @@ public class Ex3Algo implements PacManAlgo {
 
                 if (nx == tx && ny == ty) return firstDir[nx][ny];
 
-                q.add(new int[]{nx, ny});
+                q.addLast(nx * h + ny);
             }
         }
 
@@ -24,6 +24,14 @@ public class MyPacmanGame implements PacManGame {
     private int[][] board;
     private int w, h;
 
+    /**
+     * The board returned by getGame: a copy of the column references, so consumers can keep it
+     * across ticks. Columns are copied on write instead: sharedColumns[x] means board[x] is
+     * also a column of a handed out board and must be cloned before it is modified.
+     */
+    private int[][] published = null;
+    private boolean[] sharedColumns = new boolean[0];
+
     private int tick = 0;
 
     private int pacX, pacY;
@@ -146,6 +154,8 @@ public class MyPacmanGame implements PacManGame {
         w = maxW;
 
         board = new int[w][h];
+        sharedColumns = new boolean[w];
+        published = null;
 
         for (int y = 0; y < h; y++) {
             String row = rows[h - 1 - y]; // reverse so y goes up
@@ -267,15 +277,27 @@ public class MyPacmanGame implements PacManGame {
         }
     }
 
+    /**
+     * Writes a board cell, cloning its column first if a handed out board still shares it.
+     */
+    private void setCell(int x, int y, int v) {
+        if (sharedColumns[x]) {
+            board[x] = board[x].clone();
+            sharedColumns[x] = false;
+        }
+        board[x][y] = v;
+        published = null;
+    }
+
     private void eatAtPacman() {
         int v = board[pacX][pacY];
 
         if (v == DOT) {
-            board[pacX][pacY] = EMPTY;
+            setCell(pacX, pacY, EMPTY);
             score += DOT_SCORE;
 
         } else if (v == POWER) {
-            board[pacX][pacY] = EMPTY;
+            setCell(pacX, pacY, EMPTY);
             score += POWER_SCORE;
 
             // all ghosts become eatable
@@ -374,7 +396,19 @@ public class MyPacmanGame implements PacManGame {
     @Override public Character getKeyChar() { return lastKey; }
     @Override public String getPos(int code) { return pacX + "," + pacY; }
     @Override public GhostCL[] getGhosts(int code) { return ghosts; }
-    @Override public int[][] getGame(int code) { return board; }
+    /**
+     * Returns an immutable version of the board: later moves do not change it, so it can be held
+     * across ticks. Nothing is copied but the column references (once per change of the board);
+     * the columns are shared with the board until they are written. Callers must not modify it.
+     */
+    @Override
+    public int[][] getGame(int code) {
+        if (published == null) {
+            published = board.clone();
+            java.util.Arrays.fill(sharedColumns, true);
+        }
+        return published;
+    }
 
     @Override
     public String end(int code) {
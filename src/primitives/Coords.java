@@ -0,0 +1,34 @@
+package primitives;
+
+/**
+ * Packs a pair of int coordinates (x,y) into one long and back, so pixels can be used as keys
+ * of primitive collections ({@link LongHashSet}) without allocating a point object.
+ *
+ * x is stored in the high 32 bits and y in the low 32 bits; any int pair (negative values
+ * included) round-trips exactly.
+ */
+public final class Coords {
+
+    private Coords() {}
+
+    /**
+     * @return the packed form of (x,y)
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    /**
+     * @return the x coordinate of a packed pair
+     */
+    public static int x(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    /**
+     * @return the y coordinate of a packed pair
+     */
+    public static int y(long packed) {
+        return (int) packed;
+    }
+}
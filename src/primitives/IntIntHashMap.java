@@ -0,0 +1,167 @@
+package primitives;
+
+import java.util.Arrays;
+
+/**
+ * A map from int keys to int values without boxing.
+ *
+ * The entries are kept in two dense arrays in insertion order, and an open addressing table
+ * (linear probing) maps each key to its entry. Iterating with {@link #keyAt(int)} /
+ * {@link #valueAt(int)} therefore visits the keys in the order they were first put, which keeps
+ * results such as "the most frequent value, first one on ties" deterministic.
+ * There is no single-key removal; {@link #clear()} empties the map.
+ */
+public class IntIntHashMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] _keys;
+    private int[] _values;
+    private int _size = 0;
+    /** Entry index + 1 of every used slot, 0 for free slots. */
+    private int[] _slots;
+    private int _mask;
+
+    /**
+     * Constructs an empty map.
+     */
+    public IntIntHashMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Constructs an empty map that holds {expected} keys without growing.
+     */
+    public IntIntHashMap(int expected) {
+        if (expected < 0) throw new RuntimeException("Negative capacity: " + expected);
+        int cap = MIN_CAPACITY;
+        while (cap < 2L * expected) cap <<= 1;
+        _slots = new int[cap];
+        _mask = cap - 1;
+        _keys = new int[cap >>> 1];
+        _values = new int[cap >>> 1];
+    }
+
+    /** @return the number of keys in the map. */
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @return the value of {key}, or {missing} if it is not in the map
+     */
+    public int get(int key, int missing) {
+        int e = find(key);
+        return (e < 0) ? missing : _values[e];
+    }
+
+    /**
+     * Sets the value of {key}.
+     * @return the previous value, or {missing} if the key is new
+     */
+    public int put(int key, int value, int missing) {
+        int e = entry(key, value);
+        if (e < 0) return missing;
+        int old = _values[e];
+        _values[e] = value;
+        return old;
+    }
+
+    /**
+     * Adds {delta} to the value of {key} (a new key starts at 0).
+     * @return the new value
+     */
+    public int addTo(int key, int delta) {
+        int e = entry(key, delta);
+        if (e < 0) return delta;
+        return _values[e] += delta;
+    }
+
+    /**
+     * @return the i-th key, in insertion order
+     * @throws RuntimeException if {i} is not in [0, size())
+     */
+    public int keyAt(int i) {
+        checkIndex(i);
+        return _keys[i];
+    }
+
+    /**
+     * @return the value of the i-th key, in insertion order
+     * @throws RuntimeException if {i} is not in [0, size())
+     */
+    public int valueAt(int i) {
+        checkIndex(i);
+        return _values[i];
+    }
+
+    /**
+     * Removes all the entries (the table keeps its capacity).
+     */
+    public void clear() {
+        Arrays.fill(_slots, 0);
+        _size = 0;
+    }
+
+    /**
+     * @return the entry index of {key}, or -1
+     */
+    private int find(int key) {
+        int[] slots = _slots;
+        for (int i = slot(key); ; i = (i + 1) & _mask) {
+            int s = slots[i];
+            if (s == 0) return -1;
+            if (_keys[s - 1] == key) return s - 1;
+        }
+    }
+
+    /**
+     * Finds the entry of {key}, or appends a new one holding {value}.
+     * @return the entry index of an existing key, or -1 if the key was added
+     */
+    private int entry(int key, int value) {
+        int[] slots = _slots;
+        int i = slot(key);
+        for (int s = slots[i]; s != 0; s = slots[i]) {
+            if (_keys[s - 1] == key) return s - 1;
+            i = (i + 1) & _mask;
+        }
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, _size * 2);
+            _values = Arrays.copyOf(_values, _size * 2);
+        }
+        _keys[_size] = key;
+        _values[_size] = value;
+        slots[i] = ++_size;
+        if (_size > (slots.length >>> 1)) rehash(slots.length << 1);
+        return -1;
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & _mask;
+    }
+
+    private void rehash(int capacity) {
+        _slots = new int[capacity];
+        _mask = capacity - 1;
+        for (int e = 0; e < _size; e++) {
+            int i = slot(_keys[e]);
+            while (_slots[i] != 0) i = (i + 1) & _mask;
+            _slots[i] = e + 1;
+        }
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= _size) {
+            throw new RuntimeException("Index out of bounds: " + i + " (size " + _size + ")");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package primitives;
+
+/**
+ * A double ended queue of ints in a circular {int[]} buffer (a power of two long), replacing
+ * {ArrayDeque<Integer>} / {ArrayDeque<int[]>} in the BFS loops: no boxing, no per element
+ * allocation, and {@link #clear()} keeps the buffer for the next search.
+ */
+public class IntRingDeque {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] _items;
+    private int _mask;
+    private int _head = 0;
+    private int _size = 0;
+
+    /**
+     * Constructs an empty deque.
+     */
+    public IntRingDeque() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty deque that holds {expected} elements without growing.
+     */
+    public IntRingDeque(int expected) {
+        if (expected < 0) throw new RuntimeException("Negative capacity: " + expected);
+        int cap = MIN_CAPACITY;
+        while (cap < expected) cap <<= 1;
+        _items = new int[cap];
+        _mask = cap - 1;
+    }
+
+    /** @return the number of elements. */
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    public void addLast(int v) {
+        if (_size == _items.length) grow();
+        _items[(_head + _size) & _mask] = v;
+        _size++;
+    }
+
+    public void addFirst(int v) {
+        if (_size == _items.length) grow();
+        _head = (_head - 1) & _mask;
+        _items[_head] = v;
+        _size++;
+    }
+
+    /**
+     * Removes and returns the first element.
+     * @throws RuntimeException if the deque is empty
+     */
+    public int pollFirst() {
+        checkNotEmpty();
+        int v = _items[_head];
+        _head = (_head + 1) & _mask;
+        _size--;
+        return v;
+    }
+
+    /**
+     * Removes and returns the last element.
+     * @throws RuntimeException if the deque is empty
+     */
+    public int pollLast() {
+        checkNotEmpty();
+        _size--;
+        return _items[(_head + _size) & _mask];
+    }
+
+    /**
+     * @throws RuntimeException if the deque is empty
+     */
+    public int peekFirst() {
+        checkNotEmpty();
+        return _items[_head];
+    }
+
+    /**
+     * @throws RuntimeException if the deque is empty
+     */
+    public int peekLast() {
+        checkNotEmpty();
+        return _items[(_head + _size - 1) & _mask];
+    }
+
+    /**
+     * @return the i-th element from the front
+     * @throws RuntimeException if {i} is not in [0, size())
+     */
+    public int get(int i) {
+        if (i < 0 || i >= _size) {
+            throw new RuntimeException("Index out of bounds: " + i + " (size " + _size + ")");
+        }
+        return _items[(_head + i) & _mask];
+    }
+
+    /**
+     * @return true iff {v} is one of the elements (linear scan)
+     */
+    public boolean contains(int v) {
+        for (int i = 0; i < _size; i++) {
+            if (_items[(_head + i) & _mask] == v) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all the elements (the buffer keeps its capacity).
+     */
+    public void clear() {
+        _head = 0;
+        _size = 0;
+    }
+
+    private void grow() {
+        int n = _items.length;
+        int[] items = new int[n << 1];
+        int first = n - _head;
+        System.arraycopy(_items, _head, items, 0, first);
+        System.arraycopy(_items, 0, items, first, _head);
+        _items = items;
+        _mask = items.length - 1;
+        _head = 0;
+    }
+
+    private void checkNotEmpty() {
+        if (_size == 0) {
+            throw new RuntimeException("Deque is empty");
+        }
+    }
+}
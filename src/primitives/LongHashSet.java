@@ -0,0 +1,143 @@
+package primitives;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs with open addressing (linear probing) over a single {long[]}: no boxing and
+ * no entry objects. Pair it with {@link Coords#pack(int, int)} for sets of pixels.
+ *
+ * The table is kept at most half full and doubles when it grows past that. The value 0 is used
+ * to mark free slots, so the key 0 is tracked by a separate flag.
+ */
+public class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] _keys;
+    private int _mask;
+    private int _size = 0;
+    private boolean _hasZero = false;
+
+    /**
+     * Constructs an empty set.
+     */
+    public LongHashSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Constructs an empty set that holds {expected} keys without growing.
+     */
+    public LongHashSet(int expected) {
+        if (expected < 0) throw new RuntimeException("Negative capacity: " + expected);
+        int cap = MIN_CAPACITY;
+        while (cap < 2L * expected) cap <<= 1;
+        _keys = new long[cap];
+        _mask = cap - 1;
+    }
+
+    /** @return the number of keys in the set. */
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * @return true iff {key} is in the set
+     */
+    public boolean contains(long key) {
+        if (key == 0) return _hasZero;
+        long[] keys = _keys;
+        for (int i = slot(key); ; i = (i + 1) & _mask) {
+            long k = keys[i];
+            if (k == key) return true;
+            if (k == 0) return false;
+        }
+    }
+
+    /**
+     * Adds {key} to the set.
+     * @return true iff it was not already there
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (_hasZero) return false;
+            _hasZero = true;
+            _size++;
+            return true;
+        }
+        long[] keys = _keys;
+        int i = slot(key);
+        for (long k = keys[i]; k != 0; k = keys[i]) {
+            if (k == key) return false;
+            i = (i + 1) & _mask;
+        }
+        keys[i] = key;
+        if (++_size > (_keys.length >>> 1)) rehash(_keys.length << 1);
+        return true;
+    }
+
+    /**
+     * Removes {key} from the set. The following entries of its probe run are shifted back, so
+     * no tombstones are left behind.
+     * @return true iff it was in the set
+     */
+    public boolean remove(long key) {
+        if (key == 0) {
+            if (!_hasZero) return false;
+            _hasZero = false;
+            _size--;
+            return true;
+        }
+        long[] keys = _keys;
+        int mask = _mask;
+        int i = slot(key);
+        for (long k = keys[i]; k != key; k = keys[i]) {
+            if (k == 0) return false;
+            i = (i + 1) & mask;
+        }
+        // backward shift: move up every entry whose home slot is not in (i, j]
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            long k = keys[j];
+            if (k == 0) break;
+            int home = slot(k);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = k;
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        _size--;
+        return true;
+    }
+
+    /**
+     * Removes all the keys (the table keeps its capacity).
+     */
+    public void clear() {
+        Arrays.fill(_keys, 0);
+        _hasZero = false;
+        _size = 0;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & _mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = _keys;
+        _keys = new long[capacity];
+        _mask = capacity - 1;
+        for (long k : old) {
+            if (k == 0) continue;
+            int i = slot(k);
+            while (_keys[i] != 0) i = (i + 1) & _mask;
+            _keys[i] = k;
+        }
+    }
+}